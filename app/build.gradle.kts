@@ -37,6 +37,10 @@ android {
     buildFeatures {
         compose = true
     }
+    testOptions {
+        // plain JVM unit tests for the pure-Java logic, android.util.Log calls become no-ops
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -0,0 +1,6 @@
+-- Unique index so per-user pet lookups and updates don't scan pet_services.
+-- Older installs could end up with more than one pet row per user, keep the first one.
+DELETE FROM pet_services
+WHERE username IS NOT NULL
+  AND pet_id NOT IN (SELECT MIN(pet_id) FROM pet_services WHERE username IS NOT NULL GROUP BY username);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_pet_services_username ON pet_services(username);
@@ -0,0 +1,2 @@
+-- Covers "WHERE username = ? ORDER BY entry_id DESC" for the journal history and latest entry.
+CREATE INDEX IF NOT EXISTS idx_journal_service_username_entry ON journal_service(username, entry_id DESC);
@@ -0,0 +1,128 @@
+package com.example.chatpet;
+
+import android.util.Log;
+
+import com.google.mediapipe.tasks.genai.llminference.LlmInference;
+
+import java.util.List;
+
+/**
+ * Packs the persona prompt plus the newest chat turns into a fixed token budget.
+ * Every message is measured with the model tokenizer once and the count is cached on the message,
+ * so a long message can't blow the context window and short ones don't waste it.
+ */
+public class ChatContextBuilder {
+    private static final String TAG = "ChatContextBuilder";
+    static final String HISTORY_HEADER = "\n\nPrevious conversation today:\n";
+
+    // Default engine context is 512 tokens, leave room for the new message and the reply
+    public static final int DEFAULT_TOKEN_BUDGET = 320;
+
+    // a full budget of English text is roughly 4 chars per token, room to spare for long personas
+    private static final int PROMPT_BUFFER_CHARS = 4096;
+
+    private int tokenBudget;
+    private int lastTokenUsage = 0;
+    private int lastIncludedMessages = 0;
+    // reused for every prompt so building one doesn't regrow a fresh builder (guarded by this)
+    private final StringBuilder promptBuffer = new StringBuilder(PROMPT_BUFFER_CHARS);
+
+    public ChatContextBuilder() {
+        this(DEFAULT_TOKEN_BUDGET);
+    }
+
+    public ChatContextBuilder(int tokenBudget) {
+        this.tokenBudget = tokenBudget;
+    }
+
+    public synchronized int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    public synchronized void setTokenBudget(int tokenBudget) {
+        this.tokenBudget = tokenBudget;
+    }
+
+    /**
+     * Tokens used by the last context that was built (persona + included history)
+     */
+    public synchronized int getLastTokenUsage() {
+        return lastTokenUsage;
+    }
+
+    public synchronized int getLastIncludedMessages() {
+        return lastIncludedMessages;
+    }
+
+    /**
+     * Build persona + as many of the newest messages as fit in the budget, oldest first
+     */
+    public synchronized String build(LlmInference llm, String basePrompt, List<ChatService.ChatMessage> history) {
+        int used = countTokens(llm, basePrompt);
+        int headerTokens = countTokens(llm, HISTORY_HEADER);
+
+        // walk back from the newest message until the budget is used up
+        int first = history.size();
+        int historyTokens = headerTokens;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            int messageTokens = measure(llm, history.get(i));
+            if (used + historyTokens + messageTokens > tokenBudget) {
+                break;
+            }
+            historyTokens += messageTokens;
+            first = i;
+        }
+
+        StringBuilder context = promptBuffer;
+        context.setLength(0);
+        context.append(basePrompt);
+        if (first < history.size()) {
+            context.append(HISTORY_HEADER);
+            for (int i = first; i < history.size(); i++) {
+                appendMessage(context, history.get(i));
+            }
+            used += historyTokens;
+        }
+
+        lastTokenUsage = used;
+        lastIncludedMessages = history.size() - first;
+        Log.d(TAG, "Context uses " + used + "/" + tokenBudget + " tokens with "
+                + lastIncludedMessages + " of " + history.size() + " messages");
+        return context.toString();
+    }
+
+    /**
+     * Token count of a message as it appears in the prompt, cached on the message
+     */
+    public int measure(LlmInference llm, ChatService.ChatMessage msg) {
+        int cached = msg.getTokenCount();
+        if (cached >= 0) {
+            return cached;
+        }
+        int tokens = countTokens(llm, formatMessage(msg));
+        msg.setTokenCount(tokens);
+        return tokens;
+    }
+
+    public int countTokens(LlmInference llm, String text) {
+        try {
+            return llm.sizeInTokens(text);
+        } catch (Exception e) {
+            // rough estimate for English text if the tokenizer call fails
+            Log.e(TAG, "sizeInTokens failed, estimating: " + e.getMessage());
+            return text.length() / 4 + 1;
+        }
+    }
+
+    static String formatMessage(ChatService.ChatMessage msg) {
+        if ("user".equals(msg.role)) {
+            return "User: " + msg.message + "\n";
+        }
+        return "Assistant: " + msg.message + "\n";
+    }
+
+    // same text as formatMessage, appended in place
+    static void appendMessage(StringBuilder out, ChatService.ChatMessage msg) {
+        out.append("user".equals(msg.role) ? "User: " : "Assistant: ").append(msg.message).append('\n');
+    }
+}
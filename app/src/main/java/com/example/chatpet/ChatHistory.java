@@ -0,0 +1,83 @@
+package com.example.chatpet;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Fixed-capacity ring buffer of chat messages, oldest first.
+ * Adding to a full buffer overwrites the oldest message and dropping the oldest message
+ * is O(1), so trimming the history never shifts or reallocates the backing array.
+ * Not thread-safe, ChatService guards it with its own lock.
+ */
+public class ChatHistory extends AbstractList<ChatService.ChatMessage> implements RandomAccess {
+    private final ChatService.ChatMessage[] messages;
+    private int head = 0; // index of the oldest message
+    private int size = 0;
+
+    public ChatHistory(int capacity) {
+        this.messages = new ChatService.ChatMessage[capacity];
+    }
+
+    public int capacity() {
+        return messages.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public ChatService.ChatMessage get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return messages[(head + index) % messages.length];
+    }
+
+    /**
+     * Append a message, overwriting the oldest one when the buffer is full
+     */
+    @Override
+    public boolean add(ChatService.ChatMessage message) {
+        if (size == messages.length) {
+            messages[head] = message;
+            head = (head + 1) % messages.length;
+        } else {
+            messages[(head + size) % messages.length] = message;
+            size++;
+        }
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Remove the message at the index, O(1) for the oldest one
+     */
+    @Override
+    public ChatService.ChatMessage remove(int index) {
+        ChatService.ChatMessage removed = get(index);
+        if (index == 0) {
+            messages[head] = null;
+            head = (head + 1) % messages.length;
+        } else {
+            // shift the newer messages down by one, only used off the chat path
+            for (int i = index; i < size - 1; i++) {
+                messages[(head + i) % messages.length] = messages[(head + i + 1) % messages.length];
+            }
+            messages[(head + size - 1) % messages.length] = null;
+        }
+        size--;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(messages, null);
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.chatpet;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded queue of chat messages waiting for the engine.
+ * Follow-up messages sent while a reply is being generated are kept instead of dropped,
+ * and consecutive pending messages for the same persona are merged into one prompt turn.
+ * When the queue is full new messages are merged into the newest pending request.
+ */
+public class ChatRequestQueue {
+    private static final String TAG = "ChatRequestQueue";
+    public static final int DEFAULT_CAPACITY = 8;
+
+    public static class Request {
+        public final String userMsg;
+        public final String prompt;
+        public final long enqueuedAt;
+
+        Request(String userMsg, String prompt, long enqueuedAt) {
+            this.userMsg = userMsg;
+            this.prompt = prompt;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Request> pending = new ArrayDeque<>();
+
+    // wait time stats, from enqueue until the request is handed to the engine
+    private long lastWaitMs = 0;
+    private long totalWaitMs = 0;
+    private long dequeuedCount = 0;
+
+    public ChatRequestQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ChatRequestQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a message, returns the queue depth afterwards
+     */
+    public synchronized int offer(String userMsg, String prompt) {
+        Request last = pending.peekLast();
+        if (last != null && (last.prompt.equals(prompt) || pending.size() >= capacity)) {
+            // merge into the newest pending request, keeping its place and enqueue time
+            pending.pollLast();
+            pending.addLast(new Request(last.userMsg + "\n" + userMsg, prompt, last.enqueuedAt));
+            Log.d(TAG, "Coalesced message into pending request, depth " + pending.size());
+        } else {
+            pending.addLast(new Request(userMsg, prompt, System.currentTimeMillis()));
+            Log.d(TAG, "Queued message, depth " + pending.size());
+        }
+        return pending.size();
+    }
+
+    /**
+     * Put a cancelled request back at the head, merged with the next pending one for the same persona
+     * so the reply covers both messages
+     */
+    public synchronized void requeueFirst(Request request) {
+        Request head = pending.peekFirst();
+        if (head != null && head.prompt.equals(request.prompt)) {
+            pending.pollFirst();
+            pending.addFirst(new Request(request.userMsg + "\n" + head.userMsg, head.prompt, request.enqueuedAt));
+        } else {
+            pending.addFirst(request);
+        }
+        Log.d(TAG, "Requeued cancelled request, depth " + pending.size());
+    }
+
+    /**
+     * Take the next request, or null if there is no work
+     */
+    public synchronized Request poll() {
+        Request next = pending.pollFirst();
+        if (next != null) {
+            lastWaitMs = System.currentTimeMillis() - next.enqueuedAt;
+            totalWaitMs += lastWaitMs;
+            dequeuedCount++;
+        }
+        return next;
+    }
+
+    public synchronized void clear() {
+        pending.clear();
+    }
+
+    public synchronized int getDepth() {
+        return pending.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getLastWaitMs() {
+        return lastWaitMs;
+    }
+
+    public synchronized long getAverageWaitMs() {
+        return dequeuedCount == 0 ? 0 : totalWaitMs / dequeuedCount;
+    }
+}
@@ -3,82 +3,245 @@ import android.content.Context;
 import android.util.Log;
 
 import com.google.mediapipe.tasks.genai.llminference.LlmInference;
+import com.google.mediapipe.tasks.genai.llminference.LlmInferenceSession;
 
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
 public class ChatService {
 
-    private LlmInference llm;
-    private List<ChatMessage> conversationHistory;
+    // Hard cap to bound memory, the token budget decides what actually goes into the prompt
+    private static final int MAX_HISTORY_MESSAGES = 50;
+    // Room for the replayed cached turns plus the new user message
+    private static final int TURN_BUFFER_CHARS = 1024;
+
+    private final LlmEngineManager engineManager;
+    private final ChatContextBuilder contextBuilder = new ChatContextBuilder();
+    private final ConversationSummarizer summarizer = new ConversationSummarizer();
+    private final ChatHistory conversationHistory;
     private String currentDate;
-    private boolean isLlmInitialized = false;
-    private String initializedModelPath = null;
+    // first millisecond of tomorrow, checked on every turn without allocating
+    private volatile long nextDayStartMillis = 0;
+
+    // Older turns folded into a short summary by the summarizer (guarded by conversationHistory)
+    private static final int SUMMARIZE_THRESHOLD_MESSAGES = 8;
+    private static final int KEEP_RECENT_MESSAGES = 4;
+    // give up after this many idle periods in a row with the engine busy
+    private static final int MAX_SUMMARY_RETRIES = 3;
+    private String runningSummary = "";
+
+    // Long-lived session for today's conversation, keeps the KV cache between turns
+    private LlmInferenceSession session;
+    private LlmInference sessionEngine;
+    private String sessionPersonaPrompt;
+    private String sessionProfileKey;
+    private int sessionTokens = 0;
+    private volatile boolean sessionStale = false;
+    // turns answered from the response cache that the session hasn't seen yet (guarded by conversationHistory)
+    private final StringBuilder pendingSessionText = new StringBuilder();
+    // reused for every turn that replays cached turns (only touched while holding the engine)
+    private final StringBuilder turnBuffer = new StringBuilder(TURN_BUFFER_CHARS);
 
     public ChatService() {
         /*
         ChatService module that communicates with LLM api using prompt & user msg
         Now with conversation history tracking for current day
         */
-        this.conversationHistory = new ArrayList<>();
+        this.engineManager = LlmEngineManager.getInstance();
+        this.conversationHistory = new ChatHistory(MAX_HISTORY_MESSAGES);
         updateCurrentDate();
+
+        // a session can't outlive the engine it was created from
+        engineManager.addEngineCloseListener(engine -> {
+            if (engine == sessionEngine) {
+                closeSession();
+            }
+        });
     }
 
     // Inner class to represent a chat message
     public static class ChatMessage {
+        // DateTimeFormatter is immutable and thread-safe, so one instance serves every message
+        private static final DateTimeFormatter TIME_FORMAT =
+                DateTimeFormatter.ofPattern("HH:mm:ss", Locale.getDefault());
+
         public final String role; // "user" or "assistant"
         public final String message;
-        public final String timestamp;
+        public final long timestamp; // epoch millis
+        private int tokenCount = -1; // cached prompt size in tokens, -1 until measured
 
-        public ChatMessage(String role, String message, String timestamp) {
+        public ChatMessage(String role, String message, long timestamp) {
             this.role = role;
             this.message = message;
             this.timestamp = timestamp;
         }
+
+        // formatted only when someone actually displays it
+        public String getFormattedTime() {
+            return TIME_FORMAT.format(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()));
+        }
+
+        int getTokenCount() {
+            return tokenCount;
+        }
+
+        void setTokenCount(int tokenCount) {
+            this.tokenCount = tokenCount;
+        }
     }
 
     private void updateCurrentDate() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String today = dateFormat.format(new Date());
+        // same day as last time, nothing to do
+        if (System.currentTimeMillis() < nextDayStartMillis) {
+            return;
+        }
+        LocalDate date = LocalDate.now();
+        String today = date.toString();
         
         // If date changed, clear conversation history
-        if (!today.equals(currentDate)) {
-            currentDate = today;
-            conversationHistory.clear();
-            Log.d("ChatService", "New day detected, cleared conversation history");
+        synchronized (conversationHistory) {
+            nextDayStartMillis = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            if (!today.equals(currentDate)) {
+                currentDate = today;
+                conversationHistory.clear();
+                runningSummary = "";
+                pendingSessionText.setLength(0);
+                sessionStale = true;
+                summarizer.cancel();
+                Log.d("ChatService", "New day detected, cleared conversation history");
+            }
         }
     }
 
     private void addToHistory(String role, String message) {
-        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-        String timestamp = timeFormat.format(new Date());
-        conversationHistory.add(new ChatMessage(role, message, timestamp));
-        
-        // Optional: Limit history size to prevent memory issues
-        if (conversationHistory.size() > 10) {
-            conversationHistory.remove(0); // Remove oldest message
+        ChatMessage msg = new ChatMessage(role, message, System.currentTimeMillis());
+        synchronized (conversationHistory) {
+            // ring buffer drops the oldest message once it's full
+            conversationHistory.add(msg);
         }
     }
 
-    private String buildConversationContext(String basePrompt) {
-        StringBuilder context = new StringBuilder();
-        context.append(basePrompt);
-        
-        if (!conversationHistory.isEmpty()) {
-            context.append("\n\nPrevious conversation today:\n");
-            for (ChatMessage msg : conversationHistory) {
-                if ("user".equals(msg.role)) {
-                    context.append("User: ").append(msg.message).append("\n");
-                } else {
-                    context.append("Assistant: ").append(msg.message).append("\n");
-                }
+    /**
+     * Receives the reply text decoded so far while a streaming generation is running
+     */
+    public interface PartialResultListener {
+        void onPartialResult(String textSoFar);
+    }
+
+    // returns the tokens prefilled for a new session, 0 when the running one is reused
+    private int ensureSession(LlmInference llm, String prompt, int turnTokens, GenerationProfile profile)
+            throws Exception {
+        // Reuse the running session (and its KV cache) unless the persona or the (tuned) profile changed,
+        // the day rolled over, or the next turn would push it past the token budget
+        boolean reusable = session != null
+                && !sessionStale
+                && llm == sessionEngine
+                && prompt.equals(sessionPersonaPrompt)
+                && profile.getKey().equals(sessionProfileKey)
+                && sessionTokens + turnTokens <= contextBuilder.getTokenBudget();
+        if (reusable) {
+            Log.d("ChatService", "Reusing inference session (" + sessionTokens + " tokens cached)");
+            return 0;
+        }
+
+        closeSession();
+
+        // sampling settings come from the (tuned) chat generation profile
+        session = LlmInferenceSession.createFromOptions(llm, profile.toSessionOptions());
+        sessionEngine = llm;
+        sessionPersonaPrompt = prompt;
+        sessionProfileKey = profile.getKey();
+        sessionStale = false;
+
+        // prefill the persona and the newest history that fits the budget once,
+        // later turns only append the new message
+        String contextualPrompt;
+        synchronized (conversationHistory) {
+            String basePrompt = runningSummary.isEmpty() ? prompt
+                    : prompt + "\n\nSummary of earlier conversation today: " + runningSummary;
+            contextualPrompt = contextBuilder.build(llm, basePrompt, conversationHistory);
+        }
+        session.addQueryChunk(contextualPrompt);
+        sessionTokens = contextBuilder.getLastTokenUsage();
+        Log.d("ChatService", "Built new inference session with context: " + contextualPrompt);
+        return sessionTokens;
+    }
+
+    private String runTurn(LlmInference llm, String prompt, String userMsg,
+                           PartialResultListener listener, GenerationHandle handle) throws Exception {
+        // may have been cancelled while waiting for the engine, free it right away
+        handle.throwIfCancelled();
+
+        String pendingText;
+        synchronized (conversationHistory) {
+            pendingText = pendingSessionText.toString();
+            pendingSessionText.setLength(0);
+        }
+        String userTurn = " \n\nUser: " + userMsg;
+        int pendingTokens = pendingText.isEmpty() ? 0 : contextBuilder.countTokens(llm, pendingText);
+        int userTurnTokens = contextBuilder.countTokens(llm, userTurn);
+
+        LlmInferenceSession previousSession = session;
+        int contextTokens = ensureSession(llm, prompt, pendingTokens + userTurnTokens, handle.getProfile());
+        boolean reused = previousSession != null && session == previousSession;
+
+        // replay cached turns so a reused session stays in step with the history,
+        // a rebuilt one already got them from the history when its context was built
+        String turnChunk;
+        int turnTokens;
+        if (reused && !pendingText.isEmpty()) {
+            turnBuffer.setLength(0);
+            turnBuffer.append(pendingText).append(userTurn);
+            turnChunk = turnBuffer.toString();
+            turnTokens = pendingTokens + userTurnTokens;
+        } else {
+            turnChunk = userTurn;
+            turnTokens = userTurnTokens;
+        }
+        handle.setPromptTokens(contextTokens + turnTokens);
+
+        // only the new user turn needs to be prefilled
+        session.addQueryChunk(turnChunk);
+        Log.d("ChatService", "Appended user turn: " + userMsg);
+
+        try {
+            String result = handle.generate(session, listener);
+            if (result.isEmpty()) {
+                throw new IllegalStateException("The model returned an empty reply");
             }
+            if (handle.wasStoppedAtStopSequence()) {
+                // the session also holds the hallucinated turn after the stop, rebuild it from the history next turn
+                sessionStale = true;
+            } else {
+                // the session now holds both the user message and the reply
+                sessionTokens += turnTokens + contextBuilder.countTokens(llm, result);
+            }
+            return result;
+        } catch (Exception e) {
+            // session state is unknown after a failure or cancel, rebuild it next turn
+            sessionStale = true;
+            throw e;
         }
-        
-        return context.toString();
+    }
+
+    private void closeSession() {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (Exception e) {
+                Log.e("ChatService", "Error closing inference session: " + e.getMessage(), e);
+            }
+        }
+        session = null;
+        sessionEngine = null;
+        sessionPersonaPrompt = null;
+        sessionProfileKey = null;
+        sessionTokens = 0;
     }
 
     public String generateResponse(Context context, String modelPath, String userMsg, String prompt) throws Exception {
@@ -92,6 +255,18 @@ public class ChatService {
             
         Now includes conversation history for context continuity
         */
+        return generateResponseStreaming(context, modelPath, userMsg, prompt, null,
+                new GenerationHandle(GenerationProfile.CHAT));
+    }
+
+    public String generateResponseStreaming(Context context, String modelPath, String userMsg, String prompt,
+                                            PartialResultListener listener, GenerationHandle handle) throws Exception {
+        /*
+        Same as generateResponse, but uses the engine's async api so the caller
+        gets the reply token by token through the listener (listener may be null).
+        Blocks the calling (background) thread until decoding is done and returns the full reply.
+        Cancelling the handle stops decoding and throws GenerationHandle.CancelledException.
+        */
         
         // Check if it's a new day and update accordingly
         updateCurrentDate();
@@ -100,59 +275,47 @@ public class ChatService {
             return "Hmmm.. Could you say that again?"; // make sure outside prompt is defined
         }
 
-        // Build context with conversation history
-        String contextualPrompt = buildConversationContext(prompt);
-        
-        // aggregate into prompt for llm with current user message
-        String llm_prompt = String.format("%s " +
-                "\n\n" +
-                "User: %s", contextualPrompt, userMsg);
+        // Repeated prompts to the same persona are answered from the cache
+        ResponseCache responseCache = ResponseCache.getInstance(context);
+        String cacheKey;
+        synchronized (conversationHistory) {
+            cacheKey = ResponseCache.buildKey(prompt, userMsg, conversationHistory);
+        }
+        String cached = responseCache.get(cacheKey);
+        if (cached != null) {
+            Log.d("ChatService", "Response served from cache: " + cached);
+            synchronized (conversationHistory) {
+                pendingSessionText.append(" \n\nUser: ").append(userMsg).append('\n').append(cached);
+            }
+            addToHistory("user", userMsg);
+            addToHistory("assistant", cached);
+            return cached;
+        }
 
-        Log.d("ChatService", "Full prompt with history: " + llm_prompt);
+        // a summary decoding in the background must not keep the user waiting
+        summarizer.cancel();
 
         try {
-            // Initialize LLM only once to avoid cache corruption
-            if (!isLlmInitialized || !modelPath.equals(initializedModelPath)) {
-                // Close existing instance if model path changed
-                if (llm != null) {
-                    try {
-                        llm.close();
-                        Log.d("ChatService", "Closed previous LLM instance");
-                    } catch (Exception e) {
-                        Log.e("ChatService", "Error closing previous LLM: " + e.getMessage(), e);
-                    }
-                }
-                
-                // Clear the XNNPack cache to prevent corruption issues
-                clearXNNPackCache(context);
-                
-                Log.d("ChatService", "Initializing LLM model...");
-                LlmInference.LlmInferenceOptions options =
-                        LlmInference.LlmInferenceOptions.builder()
-                                .setModelPath(modelPath)
-                                .setMaxTopK(64)
-                                .build();
-
-                llm = LlmInference.createFromOptions(context, options);
-                isLlmInitialized = true;
-                initializedModelPath = modelPath;
-                Log.d("ChatService", "LLM initialized successfully");
-            } else {
-                Log.d("ChatService", "Reusing existing LLM instance");
-            }
-
-            // Generate response — use the aggregated prompt that includes conversation history
-            String result = llm.generateResponse(llm_prompt);
+            // hold the shared engine until the whole reply has been decoded
+            String result = engineManager.runExclusive(context, modelPath,
+                    llm -> runTurn(llm, prompt, userMsg, listener, handle));
             Log.d("ChatService", "Response generated: " + result);
+            responseCache.put(cacheKey, result);
             
             // Add both user message and assistant response to history
             addToHistory("user", userMsg);
             addToHistory("assistant", result);
             
-            Log.d("ChatService", "Conversation history size: " + conversationHistory.size());
+
+            // fold older turns into the summary (and calibrate, if the greeting won the engine
+            // when the model loaded) once the user goes quiet
+            scheduleIdleWork(context.getApplicationContext(), modelPath, 0);
             
             return result;
 
+        } catch (GenerationHandle.CancelledException e) {
+            Log.d("ChatService", "Response generation cancelled for: " + userMsg);
+            throw e;
         } catch (Exception e) {
             Log.e("ChatService", "Error generating response: " + e.getMessage(), e);
             // Don't close LLM on error, keep it for reuse
@@ -160,51 +323,128 @@ public class ChatService {
         }
     }
     
-    // Method to get current conversation history (for debugging or UI purposes)
-    public List<ChatMessage> getConversationHistory() {
-        return new ArrayList<>(conversationHistory);
-    }
-    
-    // Method to clear conversation history manually if needed
-    public void clearConversationHistory() {
-        conversationHistory.clear();
-        Log.d("ChatService", "Conversation history manually cleared");
+    private void scheduleIdleWork(Context context, String modelPath, int attempt) {
+        boolean summaryDue;
+        synchronized (conversationHistory) {
+            summaryDue = conversationHistory.size() > SUMMARIZE_THRESHOLD_MESSAGES;
+        }
+        InferenceTuning tuning = InferenceTuning.getInstance(context);
+        boolean calibrationDue = tuning.getCalibration(modelPath) == null;
+        if (!summaryDue && !calibrationDue) {
+            return;
+        }
+        // one idle task, scheduling a second one would replace the first
+        summarizer.schedule(() -> {
+            if (calibrationDue && engineManager.getRefCount() > 0) {
+                tuning.calibrateIfNeeded(modelPath);
+            }
+            if (summaryDue) {
+                summarizeOlderTurns(context, modelPath, attempt);
+            }
+        });
     }
-    
-    // Method to clean up resources when service is no longer needed
-    public void cleanup() {
-        if (llm != null) {
-            try {
-                llm.close();
-                Log.d("ChatService", "LLM instance closed during cleanup");
-            } catch (Exception e) {
-                Log.e("ChatService", "Error closing LLM during cleanup: " + e.getMessage(), e);
-            } finally {
-                llm = null;
-                isLlmInitialized = false;
-                initializedModelPath = null;
+
+    private void summarizeOlderTurns(Context context, String modelPath, int attempt) {
+        // the chat screen let go of the model, don't keep waking up (or load it) just for a summary
+        if (engineManager.getRefCount() == 0 || !engineManager.isLoaded(modelPath)) {
+            Log.d("ChatService", "Engine not loaded, dropping summary");
+            return;
+        }
+
+        List<ChatMessage> toFold;
+        String previousSummary;
+        String date;
+        synchronized (conversationHistory) {
+            int foldCount = conversationHistory.size() - KEEP_RECENT_MESSAGES;
+            if (foldCount <= 0) {
+                return;
             }
+            toFold = new ArrayList<>(conversationHistory.subList(0, foldCount));
+            previousSummary = runningSummary;
+            date = currentDate;
         }
-    }
-    
-    // Clear XNNPack cache to prevent corruption issues
-    private void clearXNNPackCache(Context context) {
+
+        String summary;
         try {
-            java.io.File cacheDir = context.getCacheDir();
-            java.io.File xnnpackCache = new java.io.File(cacheDir, "gemma3-1b-it-int4.task.xnnpack_cache");
-            
-            if (xnnpackCache.exists()) {
-                boolean deleted = xnnpackCache.delete();
-                Log.d("ChatService", "XNNPack cache cleared: " + deleted);
-            } else {
-                Log.d("ChatService", "XNNPack cache file not found (this is fine for first run)");
-            }
+            summary = engineManager.runIfIdle(modelPath,
+                    llm -> summarizer.summarize(llm, previousSummary, toFold));
+        } catch (GenerationHandle.CancelledException e) {
+            // a new user message took the engine, its turn schedules the next summary
+            Log.d("ChatService", "Summary cancelled");
+            return;
         } catch (Exception e) {
-            Log.e("ChatService", "Error clearing XNNPack cache: " + e.getMessage(), e);
-            // Continue anyway - the cache will be recreated
+            Log.e("ChatService", "Error summarizing conversation: " + e.getMessage(), e);
+            return;
+        }
+        if (summary == null) {
+            if (!engineManager.isLoaded(modelPath) || attempt >= MAX_SUMMARY_RETRIES) {
+                Log.d("ChatService", "Engine unavailable, dropping summary after " + (attempt + 1) + " attempts");
+                return;
+            }
+            // engine busy, try again after the next idle period
+            Log.d("ChatService", "Engine busy, postponing summary");
+            scheduleIdleWork(context, modelPath, attempt + 1);
+            return;
+        }
+
+        synchronized (conversationHistory) {
+            if (!date.equals(currentDate)) {
+                return; // day rolled over meanwhile, history is gone anyway
+            }
+            // drop the folded messages that are still at the head of the history
+            for (ChatMessage msg : toFold) {
+                if (!conversationHistory.isEmpty() && conversationHistory.get(0) == msg) {
+                    conversationHistory.remove(0);
+                }
+            }
+            runningSummary = summary;
         }
+        // the live session keeps the raw turns until it is rebuilt for budget reasons,
+        // at which point the summary takes their place
     }
 
+    // Summary of turns that were folded out of the history
+    public String getRunningSummary() {
+        synchronized (conversationHistory) {
+            return runningSummary;
+        }
+    }
 
+    // Snapshot of the conversation history (for debugging or UI purposes),
+    // copied under the history lock since chat turns keep appending to the ring buffer
+    public List<ChatMessage> getConversationHistory() {
+        synchronized (conversationHistory) {
+            return new ArrayList<>(conversationHistory);
+        }
+    }
+    
+    // Token budget for persona + history in the prompt
+    public int getContextTokenBudget() {
+        return contextBuilder.getTokenBudget();
+    }
+
+    public void setContextTokenBudget(int tokenBudget) {
+        if (tokenBudget == contextBuilder.getTokenBudget()) {
+            return;
+        }
+        contextBuilder.setTokenBudget(tokenBudget);
+        sessionStale = true;
+    }
+
+    // Tokens actually used by the last built context
+    public int getLastContextTokenUsage() {
+        return contextBuilder.getLastTokenUsage();
+    }
 
+    // Method to clear conversation history manually if needed
+    public void clearConversationHistory() {
+        synchronized (conversationHistory) {
+            conversationHistory.clear();
+            runningSummary = "";
+            pendingSessionText.setLength(0);
+        }
+        summarizer.cancel();
+        sessionStale = true;
+        Log.d("ChatService", "Conversation history manually cleared");
+    }
 }
@@ -14,8 +14,10 @@ import androidx.lifecycle.ViewModel;
 
 import com.google.mediapipe.tasks.genai.llminference.LlmInference;
 
+import java.io.File;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ChatViewModel extends ViewModel {
     private static final String TAG = "ChatViewModel";
@@ -26,6 +28,21 @@ public class ChatViewModel extends ViewModel {
     private final MutableLiveData<LlmUiState> _uiState = new MutableLiveData<>(LlmUiState.Idle.INSTANCE);
     private final LiveData<LlmUiState> uiState = _uiState;
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    // messages waiting for the engine, drained one (merged) request at a time
+    private final ChatRequestQueue requestQueue = new ChatRequestQueue();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final MutableLiveData<Integer> _queueDepth = new MutableLiveData<>(0);
+    private final LiveData<Integer> queueDepth = _queueDepth;
+
+    // generation currently running on the executor, cancelled by superseding input or when leaving
+    private volatile GenerationHandle currentGeneration;
+    private volatile boolean cleared = false;
+
+    // speculative greeting shown while idle, superseded by any real message
+    private final GreetingService greetingService = new GreetingService();
+    private final MutableLiveData<String> _greeting = new MutableLiveData<>(null);
+    private final LiveData<String> greeting = _greeting;
     
     public ChatViewModel() {
         // only create chatservice once
@@ -33,6 +50,8 @@ public class ChatViewModel extends ViewModel {
             chatService = new ChatService();
             Log.d(TAG, "ChatService initialized");
         }
+        // keep the shared engine loaded while this screen is alive
+        LlmEngineManager.getInstance().acquire();
     }
     public LiveData<LlmUiState> getUiState() {
         return uiState;
@@ -40,9 +59,23 @@ public class ChatViewModel extends ViewModel {
     
     // method to get conversation history for debugging or UI purposes
     public java.util.List<ChatService.ChatMessage> getConversationHistory() {
-        return chatService != null ? chatService.getConversationHistory() : new java.util.ArrayList<>();
+        return chatService != null ? chatService.getConversationHistory() : java.util.Collections.emptyList();
     }
     
+    // token budget for the prompt context and how much of it the last turn used
+    public int getContextTokenBudget() {
+        return chatService.getContextTokenBudget();
+    }
+
+    public int getLastContextTokenUsage() {
+        return chatService.getLastContextTokenUsage();
+    }
+
+    // hit rate of the chat response cache, between 0 and 1
+    public double getResponseCacheHitRate(Context context) {
+        return ResponseCache.getInstance(context).getHitRate();
+    }
+
     // method to clear conversation history manually if needed
     public void clearConversationHistory() {
         if (chatService != null) {
@@ -51,40 +84,146 @@ public class ChatViewModel extends ViewModel {
         }
     }
     
-    public void generateResponse(Context context, String modelPath, String userMsg, String prompt) {
-        LlmUiState currentState = _uiState.getValue();
-        if (currentState instanceof LlmUiState.Loading) {
-            Log.d(TAG, "Already loading, request ignored.");
+    // number of messages waiting for the engine
+    public LiveData<Integer> getQueueDepth() {
+        return queueDepth;
+    }
+
+    // how long the last / an average message waited before decoding started
+    public long getLastQueueWaitMs() {
+        return requestQueue.getLastWaitMs();
+    }
+
+    public long getAverageQueueWaitMs() {
+        return requestQueue.getAverageWaitMs();
+    }
+
+    /**
+     * Write the LLM latency metrics to files/llm_metrics.json in the background
+     */
+    public void dumpMetrics(Context context) {
+        File file = new File(context.getApplicationContext().getFilesDir(), "llm_metrics.json");
+        executorService.execute(() -> LlmMetrics.getInstance().dumpToFile(file));
+    }
+
+    public LiveData<String> getGreeting() {
+        return greeting;
+    }
+
+    /**
+     * Show a greeting for the pet's current level and meters, from the cache or decoded in the background.
+     * Skipped once the user has started chatting.
+     */
+    public void requestGreeting(Context context, String modelPath, String username, String petType, String petName,
+                                int level, int happiness, int energy, int hunger) {
+        String cached = greetingService.getCached(context, username, level);
+        if (cached != null) {
+            _greeting.postValue(cached);
+            return;
+        }
+        if (!(_uiState.getValue() instanceof LlmUiState.Idle) || draining.get()) {
             return;
         }
+        greetingService.request(context, modelPath, username, petType, petName, level, happiness, energy, hunger,
+                _greeting::postValue);
+    }
+
+    public void generateResponse(Context context, String modelPath, String userMsg, String prompt) {
+        // a real message always wins over the speculative greeting and the background daily journal
+        greetingService.cancel();
+        DailyJournalJobService.cancelRunning();
 
-        _uiState.postValue(LlmUiState.Loading.INSTANCE);
-        Log.i(TAG, "Starting ChatService LLM response generation for user's msg: " + userMsg);
+        // read before queueing: once the message is queued the drain loop may already be
+        // decoding it, and that generation must not be cancelled by its own message
+        GenerationHandle running = currentGeneration;
+
+        // never drop a message, queue it (merging with other pending ones) behind the current reply
+        int depth = requestQueue.offer(userMsg, prompt);
+        _queueDepth.postValue(depth);
+
+        if (!(_uiState.getValue() instanceof LlmUiState.Streaming)) {
+            _uiState.postValue(LlmUiState.Loading.INSTANCE);
+        }
+        Log.i(TAG, "Queued ChatService LLM response generation for user's msg: " + userMsg);
+
+        // a newer message supersedes the reply in progress, it gets answered together with this one
+        if (running != null) {
+            running.cancel();
+        }
+
+        if (draining.compareAndSet(false, true)) {
+            executorService.execute(() -> drainQueue(context, modelPath));
+        }
+    }
 
-        executorService.execute(() -> {
+    /**
+     * Stop the reply being generated and drop queued messages, e.g. when the user leaves the screen
+     */
+    public void cancelGeneration() {
+        requestQueue.clear();
+        _queueDepth.postValue(0);
+        GenerationHandle running = currentGeneration;
+        if (running != null) {
+            running.cancel();
+        }
+    }
+
+    // runs on the executor, keeps the engine busy until the queue is empty
+    private void drainQueue(Context context, String modelPath) {
+        while (true) {
+            ChatRequestQueue.Request request = requestQueue.poll();
+            if (request == null) {
+                draining.set(false);
+                // a message may have arrived between poll() and resetting the flag
+                if (requestQueue.getDepth() > 0 && draining.compareAndSet(false, true)) {
+                    continue;
+                }
+                return;
+            }
+            _queueDepth.postValue(requestQueue.getDepth());
+            LlmMetrics.getInstance().recordQueueWait(GenerationProfile.CHAT.getName(), requestQueue.getLastWaitMs());
+            Log.i(TAG, "Starting ChatService LLM response generation for user's msg: " + request.userMsg
+                    + " (waited " + requestQueue.getLastWaitMs() + " ms)");
+
+            // limits tuned to this device's speed once it has been calibrated
+            InferenceTuning tuning = InferenceTuning.getInstance(context);
+            chatService.setContextTokenBudget(tuning.getHistoryBudget());
+            GenerationHandle handle = new GenerationHandle(tuning.tune(GenerationProfile.CHAT));
+            currentGeneration = handle;
             try {
-                String result = chatService.generateResponse(context, modelPath, userMsg, prompt);
+                // stream partial text to the ui so the first tokens show up right away
+                String result = chatService.generateResponseStreaming(context, modelPath, request.userMsg, request.prompt,
+                        textSoFar -> _uiState.postValue(new LlmUiState.Streaming(textSoFar)), handle);
                 _uiState.postValue(new LlmUiState.Success(result));
+            } catch (GenerationHandle.CancelledException e) {
+                if (!cleared && requestQueue.getDepth() > 0) {
+                    // superseded, answer this message together with the newer one
+                    requestQueue.requeueFirst(request);
+                    _uiState.postValue(LlmUiState.Loading.INSTANCE);
+                } else if (!cleared) {
+                    _uiState.postValue(LlmUiState.Idle.INSTANCE);
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error generating LLM response: " + e.getMessage(), e);
                 String errorMessage = e.getMessage() != null ? e.getMessage() : "An unknown error occurred";
                 _uiState.postValue(new LlmUiState.Error(errorMessage));
+            } finally {
+                currentGeneration = null;
             }
-        });
-
-
+        }
     }
     
     @Override
     protected void onCleared() {
         super.onCleared();
-        // Shutdown executor service
+        // Stop decoding a reply nobody will read and shutdown executor service
+        cleared = true;
+        cancelGeneration();
+        greetingService.shutdown();
         executorService.shutdown();
-        // Clean up chat service resources
-        if (chatService != null) {
-            chatService.cleanup();
-            Log.d(TAG, "ChatService cleaned up");
-        }
+        // Let go of the shared engine, it is closed once no screen holds it
+        LlmEngineManager.getInstance().release();
+        Log.d(TAG, "Released shared LLM engine");
     }
 }
 
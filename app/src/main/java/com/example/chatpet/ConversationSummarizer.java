@@ -0,0 +1,103 @@
+package com.example.chatpet;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.google.mediapipe.tasks.genai.llminference.LlmInference;
+import com.google.mediapipe.tasks.genai.llminference.LlmInferenceSession;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folds older chat turns into a short running summary using the engine while the chat is idle.
+ * ChatService injects the summary in place of the raw turns, so the prompt stays small
+ * over long sessions without the pet forgetting what was said earlier today.
+ */
+public class ConversationSummarizer {
+    private static final String TAG = "ConversationSummarizer";
+
+    // wait for the user to stop chatting before using the engine
+    static final long IDLE_DELAY_MS = 5000;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "chat-summarizer"));
+    private ScheduledFuture<?> pending;
+    // the summary being decoded, so a new user message can take the engine back
+    private volatile GenerationHandle currentGeneration;
+    private volatile boolean cancelRequested = false;
+
+    /**
+     * Run the task once the chat has been idle for a while, replacing any task still waiting
+     */
+    public synchronized void schedule(Runnable task) {
+        cancelRequested = false;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(task, IDLE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drop the waiting task and stop a summary that is already decoding at its next token
+     */
+    public synchronized void cancel() {
+        cancelRequested = true;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        GenerationHandle running = currentGeneration;
+        if (running != null) {
+            running.cancel();
+        }
+    }
+
+    /**
+     * Produce a new summary from the previous one plus the turns being folded.
+     * Uses its own short-lived session so the chat session's KV cache is untouched.
+     */
+    public String summarize(LlmInference llm, String previousSummary, List<ChatService.ChatMessage> turns)
+            throws Exception {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("Summarize the following conversation between a User and their pet Assistant ")
+                .append("in at most three short sentences. Keep names, facts and feelings the User mentioned. ")
+                .append("Reply with the summary only.\n\n");
+        if (previousSummary != null && !previousSummary.isEmpty()) {
+            prompt.append("Earlier summary: ").append(previousSummary).append("\n\n");
+        }
+        for (ChatService.ChatMessage msg : turns) {
+            prompt.append(ChatContextBuilder.formatMessage(msg));
+        }
+
+        GenerationHandle handle = new GenerationHandle(GenerationProfile.SUMMARY);
+        currentGeneration = handle;
+        if (cancelRequested) {
+            handle.cancel(); // cancelled before the handle was published
+        }
+        LlmInferenceSession session = null;
+        try {
+            handle.throwIfCancelled();
+            session = LlmInferenceSession.createFromOptions(llm, handle.getProfile().toSessionOptions());
+            session.addQueryChunk(prompt.toString());
+            String summary = handle.generate(session, null).trim();
+            if (summary.isEmpty()) {
+                // keep the raw turns rather than folding them into nothing
+                throw new IllegalStateException("LLM returned an empty summary");
+            }
+            Log.d(TAG, "Folded " + turns.size() + " messages into summary: " + summary);
+            return summary;
+        } finally {
+            currentGeneration = null;
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+}
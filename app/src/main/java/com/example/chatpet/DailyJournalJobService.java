@@ -0,0 +1,239 @@
+package com.example.chatpet;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.PersistableBundle;
+import android.os.Process;
+import android.util.Log;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes the day's journal entry ahead of time so the journal screen's generate button
+ * only has to show it instead of loading the model and decoding while the user waits.
+ * Scheduled once a day per user, twice: one job runs when the device is idle, the other
+ * when it's charging. Whichever runs first writes the entry, the other sees it's done.
+ */
+public class DailyJournalJobService extends JobService {
+    private static final String TAG = "DailyJournalJobService";
+    private static final String PREFS_NAME = "DailyJournalPrefs";
+    private static final String EXTRA_USERNAME = "username";
+
+    private static final long PERIOD_MS = 24 * 60 * 60 * 1000; // 1 day
+    private static final long FLEX_MS = 6 * 60 * 60 * 1000;
+    private static final int JOB_ID_BASE = 1500;
+
+    // one worker for all users, so two jobs for the same day can't both write an entry
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "daily-journal"));
+
+    // the job's decode, cancelled by onStopJob or when the user asks the engine for something
+    private static volatile GenerationHandle currentGeneration;
+    // set by onStopJob per job id, checked before and after taking the engine
+    private final Map<Integer, AtomicBoolean> stopFlags = new ConcurrentHashMap<>();
+
+    /**
+     * Schedule the daily pre-generation for this user, does nothing if it's already scheduled
+     */
+    public static void schedule(Context context, String username) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null) {
+            return;
+        }
+        scheduleJob(context, scheduler, username, true);
+        scheduleJob(context, scheduler, username, false);
+    }
+
+    private static void scheduleJob(Context context, JobScheduler scheduler, String username, boolean whenIdle) {
+        int jobId = jobId(username, whenIdle);
+        if (scheduler.getPendingJob(jobId) != null) {
+            return;
+        }
+        PersistableBundle extras = new PersistableBundle();
+        extras.putString(EXTRA_USERNAME, username);
+
+        JobInfo.Builder builder = new JobInfo.Builder(jobId,
+                new ComponentName(context, DailyJournalJobService.class))
+                .setPeriodic(PERIOD_MS, FLEX_MS)
+                .setRequiresBatteryNotLow(true)
+                .setExtras(extras);
+        if (whenIdle) {
+            builder.setRequiresDeviceIdle(true);
+        } else {
+            builder.setRequiresCharging(true);
+        }
+        int result = scheduler.schedule(builder.build());
+        Log.d(TAG, "Scheduled daily journal for " + username + (whenIdle ? " (idle)" : " (charging)")
+                + ", result " + result);
+    }
+
+    // stable per user, the idle and charging jobs get neighbouring ids
+    private static int jobId(String username, boolean whenIdle) {
+        return JOB_ID_BASE + (username.hashCode() & 0xffff) * 2 + (whenIdle ? 0 : 1);
+    }
+
+    /**
+     * Stop the background decode (if any) so a user request doesn't queue behind it,
+     * the job is retried later
+     */
+    public static void cancelRunning() {
+        GenerationHandle running = currentGeneration;
+        if (running != null) {
+            Log.d(TAG, "User request needs the engine, stopping the daily journal");
+            running.cancel();
+        }
+    }
+
+    /**
+     * True once if today's entry was written in the background and hasn't been shown yet
+     */
+    public static boolean takePregeneratedEntry(Context context, String username) {
+        synchronized (JournalService.ENTRY_WRITE_LOCK) {
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String today = LocalDate.now().toString();
+            if (!today.equals(prefs.getString(username + "_unseenDate", null))) {
+                return false;
+            }
+            prefs.edit().remove(username + "_unseenDate").apply();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        String username = params.getExtras().getString(EXTRA_USERNAME);
+        if (username == null) {
+            return false;
+        }
+        Context appContext = getApplicationContext();
+        int jobId = params.getJobId();
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        stopFlags.put(jobId, stopped);
+        executor.execute(() -> {
+            boolean retry = false;
+            try {
+                retry = !generateIfNeeded(appContext, username, stopped);
+            } catch (GenerationHandle.CancelledException e) {
+                Log.d(TAG, "Daily journal generation stopped");
+                retry = true;
+            } catch (Exception e) {
+                Log.e(TAG, "Daily journal generation failed: " + e.getMessage(), e);
+                retry = true;
+            } finally {
+                currentGeneration = null;
+                stopFlags.remove(jobId, stopped);
+            }
+            jobFinished(params, retry);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // device is no longer idle/charging, give the engine back and try again later.
+        // The flag covers a job that hasn't started decoding yet
+        AtomicBoolean stopped = stopFlags.get(params.getJobId());
+        if (stopped != null) {
+            stopped.set(true);
+        }
+        GenerationHandle running = currentGeneration;
+        if (running != null) {
+            running.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Returns false if a screen is using the engine and the job should be retried later
+     */
+    private boolean generateIfNeeded(Context context, String username, AtomicBoolean stopped) throws Exception {
+        throwIfStopped(stopped);
+        LlmEngineManager engineManager = LlmEngineManager.getInstance();
+        if (engineManager.getRefCount() > 0) {
+            Log.d(TAG, "Engine in use by the app, deferring the daily journal");
+            return false;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String today = LocalDate.now().toString();
+        if (today.equals(prefs.getString(username + "_lastDate", null))) {
+            Log.d(TAG, "Journal for " + username + " already written today");
+            return true;
+        }
+
+        JournalService journalService = new JournalService(context);
+        JournalEntry newEntry = new JournalEntry();
+        newEntry.setUsername(username);
+
+        // the user may have written today's entry themselves
+        JournalEntry latest = new UserRepository(context).getLatestJournalEntry(username);
+        if (latest != null && newEntry.getDate().equals(latest.getDate())) {
+            Log.d(TAG, "User already has a journal entry for today");
+            prefs.edit().putString(username + "_lastDate", today).apply();
+            return true;
+        }
+
+        String previousJournal = latest != null ? latest.getJournalText() : "";
+        String prompt = journalService.formatPrompt(newEntry, previousJournal);
+
+        // runs while no screen holds the engine, so the stronger journal model (if installed)
+        // can be loaded without swapping the chat model out from under the user
+        String modelPath = ModelRegistry.getInstance(context).backgroundPathFor(GenerationProfile.JOURNAL);
+        GenerationHandle handle = new GenerationHandle(
+                InferenceTuning.getInstance(context).tune(GenerationProfile.JOURNAL, modelPath));
+        currentGeneration = handle;
+        if (stopped.get()) {
+            handle.cancel(); // stopped before the handle was published
+        }
+        throwIfStopped(stopped);
+        // a screen may have opened while the prompt was built, don't make it wait behind this decode
+        if (engineManager.getRefCount() > 0) {
+            Log.d(TAG, "Engine in use by the app, deferring the daily journal");
+            return false;
+        }
+        engineManager.acquire();
+        try {
+            // generateJournalText checks the handle again once it holds the engine
+            String journalText = journalService.generateJournalText(context, modelPath, prompt, handle);
+            throwIfStopped(stopped);
+            newEntry.setJournalText(journalText);
+            synchronized (JournalService.ENTRY_WRITE_LOCK) {
+                // the user may have written today's entry while this one was decoding
+                boolean saved = journalService.saveIfFirstForDate(username, newEntry);
+                SharedPreferences.Editor editor = prefs.edit().putString(username + "_lastDate", today);
+                if (saved) {
+                    editor.putString(username + "_unseenDate", today);
+                }
+                editor.apply();
+                if (!saved) {
+                    Log.d(TAG, "User wrote today's journal meanwhile, dropping the pre-generated one");
+                    return true;
+                }
+            }
+            // the journal model is loaded anyway, measure its speed if we haven't yet
+            InferenceTuning.getInstance(context).calibrateIfNeeded(modelPath);
+        } finally {
+            engineManager.release();
+        }
+        Log.i(TAG, "Pre-generated journal entry for " + username);
+        return true;
+    }
+
+    private static void throwIfStopped(AtomicBoolean stopped) throws GenerationHandle.CancelledException {
+        if (stopped.get()) {
+            throw new GenerationHandle.CancelledException();
+        }
+    }
+}
@@ -1,18 +1,76 @@
 package com.example.chatpet;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
 import com.readystatesoftware.sqliteasset.SQLiteAssetHelper;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class DatabaseHelper extends SQLiteAssetHelper {
+    private static final String TAG = "DatabaseHelper";
 
     private static final String DATABASE_NAME = "ChatPet.db";
-    private static final int DATABASE_VERSION = 1; // increment when updating .db file in assets
+    // increment when updating .db file in assets, and add an upgrade script for the step:
+    // assets/databases/ChatPet.db_upgrade_<from>-<to>.sql, applied in order on existing installs
+    //   1-2: unique index on pet_services(username)
+    //   2-3: index on journal_service(username, entry_id DESC)
+    private static final int DATABASE_VERSION = 3;
+
+    // one helper for the whole app, so there is only ever one connection to the db
+    private static DatabaseHelper instance;
+
+    private boolean walEnabled = false;
 
+    // statements compiled once on the shared connection, keyed by their sql
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
 
-    public DatabaseHelper(Context context) {
+    private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
+
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Log.d(TAG, "Migrating database from version " + oldVersion + " to " + newVersion);
+        // runs the upgrade scripts from assets/databases one version step at a time
+        super.onUpgrade(db, oldVersion, newVersion);
+    }
+
+    /**
+     * The shared connection, opened on first use and kept open for the life of the process.
+     * Write-ahead logging lets readers run while a write is in progress.
+     * Callers must not close it.
+     */
+    public synchronized SQLiteDatabase getDatabase() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (!walEnabled) {
+            walEnabled = db.enableWriteAheadLogging();
+        }
+        return db;
+    }
+
+    /**
+     * Compiled statement for the sql, compiled on first use and reused after that.
+     * A statement is not thread-safe, synchronize on it while binding and executing.
+     */
+    public synchronized SQLiteStatement getStatement(String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = getDatabase().compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
 }
 
 // https://github.com/jgilfelt/android-sqlite-asset-helper
@@ -0,0 +1,231 @@
+package com.example.chatpet;
+
+import android.util.Log;
+
+import com.google.mediapipe.tasks.genai.llminference.LlmInferenceSession;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Handle to one in-flight generation that can be cancelled from another thread.
+ * Cancelling stops decoding at the next token boundary and frees the engine,
+ * whether the request is still waiting for the engine or already decoding.
+ */
+public class GenerationHandle {
+    private static final String TAG = "GenerationHandle";
+
+    /**
+     * Thrown by the generating thread when its handle was cancelled
+     */
+    public static class CancelledException extends Exception {
+        public CancelledException() {
+            super("Generation cancelled");
+        }
+    }
+
+    private final GenerationProfile profile;
+    private volatile boolean cancelled = false;
+    private volatile boolean stoppedEarly = false;
+    private volatile boolean stoppedAtStopSequence = false;
+    private LlmInferenceSession session;
+    private int decodedTokens = 0;
+    private int promptTokens = -1;
+    private volatile long firstTokenAt = -1;
+    private long startedAt = -1;
+    private boolean recordMetrics = true;
+
+    public GenerationHandle(GenerationProfile profile) {
+        this.profile = profile;
+    }
+
+    public GenerationProfile getProfile() {
+        return profile;
+    }
+
+    public String getTask() {
+        return profile.getName();
+    }
+
+    /**
+     * Tokens prefilled for this generation, reported with its metrics (-1 if unknown)
+     */
+    public void setPromptTokens(int promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    /**
+     * Keep this generation out of LlmMetrics, e.g. for internal runs that would skew the user-facing numbers
+     */
+    public void setRecordMetrics(boolean recordMetrics) {
+        this.recordMetrics = recordMetrics;
+    }
+
+    public boolean wasStoppedEarly() {
+        return stoppedEarly;
+    }
+
+    /**
+     * True if decoding was cut at a stop sequence, the session then holds tokens that aren't in the reply
+     */
+    public boolean wasStoppedAtStopSequence() {
+        return stoppedAtStopSequence;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        LlmInferenceSession toCancel;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toCancel = session;
+        }
+        Log.d(TAG, "Cancelling " + getTask() + " generation after " + getDecodedTokens() + " tokens");
+        if (toCancel != null) {
+            try {
+                toCancel.cancelGenerateResponseAsync();
+            } catch (Exception e) {
+                Log.e(TAG, "Error cancelling generation: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Throw if the handle was cancelled, call before handing work to the engine
+     */
+    public void throwIfCancelled() throws CancelledException {
+        if (cancelled) {
+            throw new CancelledException();
+        }
+    }
+
+    /**
+     * Decode the session's pending query asynchronously, reporting accumulated text to the listener
+     * (may be null). Blocks until done and throws CancelledException if cancelled meanwhile.
+     * Decoding stops early once the profile's output cap or a stop sequence is reached.
+     * The returned text is cleaned by the profile and may be empty if the model produced no real content.
+     */
+    public String generate(LlmInferenceSession session, ChatService.PartialResultListener listener)
+            throws Exception {
+        throwIfCancelled();
+        attach(session);
+        long start = LlmMetrics.now();
+        startedAt = start;
+        try {
+            // partial results arrive as new chunks, accumulate them for the ui
+            final StringBuilder textSoFar = new StringBuilder();
+            Future<String> future = session.generateResponseAsync((partialResult, done) -> {
+                if (partialResult == null || partialResult.isEmpty()) {
+                    return;
+                }
+                synchronized (textSoFar) {
+                    if (stoppedEarly) {
+                        return;
+                    }
+                    if (firstTokenAt < 0) {
+                        firstTokenAt = LlmMetrics.now();
+                    }
+                    onTokenDecoded();
+                    textSoFar.append(partialResult);
+                    int stopIndex = profile.findStop(textSoFar);
+                    if (stopIndex >= 0) {
+                        textSoFar.setLength(stopIndex);
+                        stoppedAtStopSequence = true;
+                        stopEarly(session, "stop sequence");
+                    } else if (getDecodedTokens() >= profile.getMaxOutputTokens()) {
+                        stopEarly(session, "max output tokens");
+                    }
+                    if (listener != null && !cancelled) {
+                        String cleaned = profile.cleanPartial(textSoFar);
+                        if (!cleaned.isEmpty()) {
+                            listener.onPartialResult(cleaned);
+                        }
+                    }
+                }
+            });
+
+            String result;
+            try {
+                result = future.get();
+            } catch (ExecutionException | CancellationException e) {
+                if (cancelled) {
+                    throw reportCancelled();
+                }
+                if (!stoppedEarly) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+                result = null;
+            }
+            if (cancelled) {
+                throw reportCancelled();
+            }
+            if (recordMetrics) {
+                LlmMetrics.getInstance().recordGeneration(getTask(),
+                        firstTokenAt >= 0 ? firstTokenAt - start : -1, LlmMetrics.now() - start,
+                        promptTokens, getDecodedTokens());
+            }
+            if (stoppedEarly || result == null) {
+                synchronized (textSoFar) {
+                    return profile.clean(textSoFar);
+                }
+            }
+            return profile.clean(result);
+        } finally {
+            detach();
+        }
+    }
+
+    // the reply is complete as far as we're concerned, stop decoding without treating it as a cancel
+    private void stopEarly(LlmInferenceSession session, String reason) {
+        stoppedEarly = true;
+        Log.d(TAG, "Stopping " + getTask() + " generation early (" + reason + ") after "
+                + getDecodedTokens() + " tokens");
+        try {
+            session.cancelGenerateResponseAsync();
+        } catch (Exception e) {
+            Log.e(TAG, "Error stopping generation: " + e.getMessage(), e);
+        }
+    }
+
+    private CancelledException reportCancelled() {
+        if (recordMetrics) {
+            LlmMetrics.getInstance().recordCancellation(getTask(), getDecodedTokens());
+        }
+        return new CancelledException();
+    }
+
+    // the session that is decoding for this handle, cancelled right away if the handle already is
+    synchronized void attach(LlmInferenceSession session) {
+        this.session = session;
+        if (cancelled) {
+            session.cancelGenerateResponseAsync();
+        }
+    }
+
+    synchronized void detach() {
+        this.session = null;
+    }
+
+    // called per partial result, each one is roughly one token
+    synchronized void onTokenDecoded() {
+        decodedTokens++;
+    }
+
+    /**
+     * Time from the start of generate() to the first decoded token, -1 if none was decoded
+     */
+    public long getFirstTokenMs() {
+        return firstTokenAt >= 0 && startedAt >= 0 ? firstTokenAt - startedAt : -1;
+    }
+
+    public synchronized int getDecodedTokens() {
+        return decodedTokens;
+    }
+}
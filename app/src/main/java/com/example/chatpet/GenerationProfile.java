@@ -0,0 +1,223 @@
+package com.example.chatpet;
+
+import com.google.mediapipe.tasks.genai.llminference.LlmInferenceSession;
+
+/**
+ * Per-task generation limits: sampling settings, a cap on output tokens and stop sequences.
+ * Decoding ends as soon as the cap is hit or the model starts writing one of the stop sequences
+ * (e.g. hallucinating the next "User:" turn), which bounds the tail latency of every reply.
+ * A role label or preamble line the model opens with ("Assistant:", "Okay, here is...") is stripped
+ * rather than stopping on it, stop sequences only count once the reply has real content.
+ */
+public class GenerationProfile {
+
+    private static final String[] NONE = new String[0];
+
+    // Interactive chat replies, short and a bit playful
+    public static final GenerationProfile CHAT = new GenerationProfile(
+            "chat", 128, 0.8f, 40,
+            new String[]{"User:", "\nUser:", "Assistant:"},
+            new String[]{"Assistant:"}, NONE);
+
+    // Daily diary entry, "Keep it short" in the prompt is backed by a hard cap here
+    public static final GenerationProfile JOURNAL = new GenerationProfile(
+            "journal", 200, 0.7f, 40,
+            new String[]{"User:", "Assistant:"},
+            new String[]{"Assistant:"}, new String[]{"Okay, here", "Sure, here"});
+
+    // One or two sentence texts like greetings
+    public static final GenerationProfile FLAVOR_TEXT = new GenerationProfile(
+            "flavor", 48, 0.9f, 64,
+            new String[]{"\n\n", "User:", "Assistant:"},
+            new String[]{"Assistant:"}, NONE);
+
+    // Conversation summaries, kept factual
+    public static final GenerationProfile SUMMARY = new GenerationProfile(
+            "summary", 80, 0.2f, 16,
+            new String[]{"User:", "Assistant:"},
+            new String[]{"Assistant:"}, NONE);
+
+    private final String name;
+    private final int maxOutputTokens;
+    private final float temperature;
+    private final int topK;
+    private final String[] stopSequences;
+    // stripped from the start of the reply: role labels on their own, preambles up to the end of their line
+    private final String[] leadingLabels;
+    private final String[] preambles;
+
+    public GenerationProfile(String name, int maxOutputTokens, float temperature, int topK, String[] stopSequences) {
+        this(name, maxOutputTokens, temperature, topK, stopSequences, NONE, NONE);
+    }
+
+    public GenerationProfile(String name, int maxOutputTokens, float temperature, int topK, String[] stopSequences,
+                             String[] leadingLabels, String[] preambles) {
+        this.name = name;
+        this.maxOutputTokens = maxOutputTokens;
+        this.temperature = temperature;
+        this.topK = topK;
+        this.stopSequences = stopSequences;
+        this.leadingLabels = leadingLabels;
+        this.preambles = preambles;
+    }
+
+    /**
+     * Same profile with a different output cap and topK, e.g. tuned for this device's speed
+     */
+    public GenerationProfile withLimits(int maxOutputTokens, int topK) {
+        return new GenerationProfile(name, maxOutputTokens, temperature, topK, stopSequences,
+                leadingLabels, preambles);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxOutputTokens() {
+        return maxOutputTokens;
+    }
+
+    public float getTemperature() {
+        return temperature;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    /**
+     * Identifies the profile including its tuned limits and sampling settings,
+     * sessions built for one key must not be reused for another
+     */
+    public String getKey() {
+        return name + ":" + maxOutputTokens + ":" + temperature + ":" + topK;
+    }
+
+    public String[] getStopSequences() {
+        return stopSequences.clone();
+    }
+
+    public LlmInferenceSession.LlmInferenceSessionOptions toSessionOptions() {
+        return LlmInferenceSession.LlmInferenceSessionOptions.builder()
+                .setTopK(topK)
+                .setTemperature(temperature)
+                .build();
+    }
+
+    /**
+     * Index where the reply's real content starts, after leading whitespace, role labels and preambles,
+     * while the reply is still being decoded. Returns the text's length while the text is still only
+     * (the beginning of) such a lead-in.
+     */
+    public int contentStart(CharSequence text) {
+        return contentStart(text.toString(), false);
+    }
+
+    // finished: decoding is over, a lead-in that never completed is kept as content instead of pending
+    private int contentStart(String str, boolean finished) {
+        int start = skipWhitespace(str, 0);
+        boolean stripped = true;
+        while (stripped && start < str.length()) {
+            stripped = false;
+            String rest = str.substring(start);
+            for (String label : leadingLabels) {
+                if (rest.startsWith(label)) {
+                    start = skipWhitespace(str, start + label.length());
+                    stripped = true;
+                    break;
+                }
+                if (!finished && label.startsWith(rest)) {
+                    return str.length(); // label still being decoded
+                }
+            }
+            if (stripped) {
+                continue;
+            }
+            for (String preamble : preambles) {
+                if (rest.startsWith(preamble)) {
+                    int preambleEnd = findPreambleEnd(str, start + preamble.length(), finished);
+                    if (preambleEnd < 0) {
+                        // nothing to cut at yet; once decoding is over keep it rather than lose the reply
+                        return finished ? start : str.length();
+                    }
+                    start = skipWhitespace(str, preambleEnd);
+                    stripped = true;
+                    break;
+                }
+                if (!finished && preamble.startsWith(rest)) {
+                    return str.length();
+                }
+            }
+        }
+        return start;
+    }
+
+    // end of a preamble: after its ':', the end of its first sentence or its line, whichever comes first
+    private static int findPreambleEnd(String str, int from, boolean finished) {
+        for (int i = from; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == ':' || c == '\n') {
+                return i + 1;
+            }
+            if (c == '.' || c == '!' || c == '?') {
+                boolean atEnd = i + 1 == str.length();
+                if ((atEnd && finished) || (!atEnd && Character.isWhitespace(str.charAt(i + 1)))) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Index where the earliest stop sequence starts in the text, or -1 if there is none.
+     * Only matches that follow real content count, a reply is never cut down to nothing.
+     */
+    public int findStop(CharSequence text) {
+        String str = text.toString();
+        return findStop(str, contentStart(str, false));
+    }
+
+    private int findStop(String str, int start) {
+        int earliest = -1;
+        for (String stop : stopSequences) {
+            int index = str.indexOf(stop, start);
+            while (index >= 0 && str.substring(start, index).trim().isEmpty()) {
+                index = str.indexOf(stop, index + 1);
+            }
+            if (index >= 0 && (earliest < 0 || index < earliest)) {
+                earliest = index;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * The finished reply without its lead-in and anything from the first stop sequence on, trimmed.
+     * Empty if the model produced no real content.
+     */
+    public String clean(CharSequence text) {
+        return clean(text.toString(), true);
+    }
+
+    /**
+     * Same as clean() for a reply still being decoded, a lead-in that isn't complete yet counts as nothing
+     */
+    public String cleanPartial(CharSequence text) {
+        return clean(text.toString(), false);
+    }
+
+    private String clean(String str, boolean finished) {
+        int start = contentStart(str, finished);
+        int stop = findStop(str, start);
+        return str.substring(start, stop >= 0 ? stop : str.length()).trim();
+    }
+
+    private static int skipWhitespace(String str, int from) {
+        int i = from;
+        while (i < str.length() && Character.isWhitespace(str.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
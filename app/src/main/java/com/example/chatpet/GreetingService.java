@@ -0,0 +1,118 @@
+package com.example.chatpet;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.util.Log;
+
+import com.google.mediapipe.tasks.genai.llminference.LlmInferenceSession;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Speculative greeting shown on the chat screen before the user has typed anything.
+ * Decoded at low priority from the pet's level and meters, cached per (user, day, level)
+ * so reopening the screen doesn't decode it again. Cancelled as soon as a real message is
+ * sent so it never holds the engine in front of a user request.
+ */
+public class GreetingService {
+    private static final String TAG = "GreetingService";
+    private static final String PREFS_NAME = "GreetingPrefs";
+
+    public interface GreetingListener {
+        void onGreeting(String greeting);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "chat-greeting"));
+
+    private volatile GenerationHandle currentGeneration;
+
+    /**
+     * Cached greeting for today and this level, or null
+     */
+    public String getCached(Context context, String username, int level) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!cacheKey(level).equals(prefs.getString(username + "_greetingKey", null))) {
+            return null;
+        }
+        return prefs.getString(username + "_greeting", null);
+    }
+
+    /**
+     * Decode a greeting in the background and hand it to the listener, unless one is already running.
+     * The listener is not called if the greeting is cancelled or fails.
+     */
+    public void request(Context context, String modelPath, String username, String petType, String petName,
+                        int level, int happiness, int energy, int hunger, GreetingListener listener) {
+        if (currentGeneration != null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        GenerationHandle handle = new GenerationHandle(GenerationProfile.FLAVOR_TEXT);
+        currentGeneration = handle;
+
+        Map<String, String> values = new HashMap<>(8);
+        values.put("persona", PromptTemplates.renderPersona(petType, petName, level));
+        values.put("happiness", Integer.toString(happiness));
+        values.put("energy", Integer.toString(energy));
+        values.put("hunger", Integer.toString(hunger));
+        String prompt = PromptTemplates.greeting().render(values);
+
+        executor.execute(() -> {
+            try {
+                String greeting = LlmEngineManager.getInstance().runExclusive(appContext, modelPath, llm -> {
+                    // a real message may have been sent while we waited for the engine
+                    handle.throwIfCancelled();
+                    LlmInferenceSession session = LlmInferenceSession.createFromOptions(llm,
+                            handle.getProfile().toSessionOptions());
+                    try {
+                        session.addQueryChunk(prompt);
+                        return handle.generate(session, null);
+                    } finally {
+                        session.close();
+                    }
+                });
+                if (greeting == null || greeting.isEmpty()) {
+                    return;
+                }
+                appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                        .putString(username + "_greetingKey", cacheKey(level))
+                        .putString(username + "_greeting", greeting)
+                        .apply();
+                Log.d(TAG, "Generated greeting: " + greeting);
+                listener.onGreeting(greeting);
+            } catch (GenerationHandle.CancelledException e) {
+                Log.d(TAG, "Greeting cancelled");
+            } catch (Exception e) {
+                Log.e(TAG, "Error generating greeting: " + e.getMessage(), e);
+            } finally {
+                currentGeneration = null;
+            }
+        });
+    }
+
+    public void cancel() {
+        GenerationHandle running = currentGeneration;
+        if (running != null) {
+            running.cancel();
+        }
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+
+    // one entry per user, replaced when the day or the level changes
+    private static String cacheKey(int level) {
+        return LocalDate.now() + ":" + level;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.chatpet;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import com.google.mediapipe.tasks.genai.llminference.LlmInferenceSession;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generation limits tuned to how fast this device runs each model.
+ * A short calibration decode runs once per model file and device, measures time to first token
+ * and decode speed, and picks output caps, topK and the chat history budget that keep replies
+ * within a target latency. Results are persisted, profiles fall back to the defaults until then.
+ */
+public class InferenceTuning {
+    private static final String TAG = "InferenceTuning";
+    private static final String PREFS_NAME = "InferenceTuningPrefs";
+
+    // fixed calibration prompt so runs are comparable across devices
+    private static final String CALIBRATION_PROMPT =
+            "You are a friendly pet companion. Tell your owner about your day in a few sentences.";
+    private static final int CALIBRATION_TOKENS = 32;
+
+    // latency targets the tuned limits aim for
+    private static final long CHAT_TARGET_MS = 4000;
+    private static final long JOURNAL_TARGET_MS = 20000;
+    private static final long PREFILL_TARGET_MS = 1500;
+
+    // devices decoding slower than this sample from fewer candidates
+    private static final double SLOW_TOKENS_PER_SEC = 8.0;
+    private static final int SLOW_TOP_K = 20;
+
+    private static InferenceTuning instance;
+
+    private final Context context;
+    // keys per model path, so tune() on a click handler doesn't stat the model file every time
+    private final Map<String, String> calibrationKeys = new HashMap<>();
+
+    /**
+     * Measured speed of one model on this device and the limits picked from it
+     */
+    public static class Calibration {
+        public final long loadMs;
+        public final long ttftMs;
+        public final double tokensPerSec;
+        public final double prefillTokensPerSec;
+        public final int chatMaxTokens;
+        public final int journalMaxTokens;
+        public final int topK;
+        public final int historyBudget;
+
+        Calibration(long loadMs, long ttftMs, double tokensPerSec, double prefillTokensPerSec) {
+            this.loadMs = loadMs;
+            this.ttftMs = ttftMs;
+            this.tokensPerSec = tokensPerSec;
+            this.prefillTokensPerSec = prefillTokensPerSec;
+            this.chatMaxTokens = clamp((int) (tokensPerSec * (CHAT_TARGET_MS - ttftMs) / 1000),
+                    48, GenerationProfile.CHAT.getMaxOutputTokens());
+            this.journalMaxTokens = clamp((int) (tokensPerSec * (JOURNAL_TARGET_MS - ttftMs) / 1000),
+                    96, GenerationProfile.JOURNAL.getMaxOutputTokens());
+            this.topK = tokensPerSec < SLOW_TOKENS_PER_SEC ? SLOW_TOP_K : GenerationProfile.CHAT.getTopK();
+            this.historyBudget = clamp((int) (prefillTokensPerSec * PREFILL_TARGET_MS / 1000),
+                    160, ChatContextBuilder.DEFAULT_TOKEN_BUDGET);
+        }
+
+        private static int clamp(int value, int min, int max) {
+            return Math.max(min, Math.min(max, value));
+        }
+    }
+
+    private InferenceTuning(Context context) {
+        this.context = context;
+    }
+
+    public static synchronized InferenceTuning getInstance(Context context) {
+        if (instance == null) {
+            instance = new InferenceTuning(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * The profile with limits tuned for the model it runs on, or the profile itself if not calibrated yet
+     */
+    public GenerationProfile tune(GenerationProfile profile) {
+        return tune(profile, ModelRegistry.getInstance(context).pathFor(profile));
+    }
+
+    /**
+     * Same as tune(profile), for a profile that runs on the given model
+     */
+    public GenerationProfile tune(GenerationProfile profile, String modelPath) {
+        Calibration calibration = getCalibration(modelPath);
+        if (calibration == null) {
+            return profile;
+        }
+        if (profile == GenerationProfile.CHAT) {
+            return profile.withLimits(calibration.chatMaxTokens, calibration.topK);
+        }
+        if (profile == GenerationProfile.JOURNAL) {
+            return profile.withLimits(calibration.journalMaxTokens, calibration.topK);
+        }
+        return profile;
+    }
+
+    /**
+     * Chat history token budget for the chat model, the default until calibrated
+     */
+    public int getHistoryBudget() {
+        Calibration calibration = getCalibration(ModelRegistry.getInstance(context).pathFor(GenerationProfile.CHAT));
+        return calibration != null ? calibration.historyBudget : ChatContextBuilder.DEFAULT_TOKEN_BUDGET;
+    }
+
+    public synchronized Calibration getCalibration(String modelPath) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String key = calibrationKey(modelPath);
+        if (!prefs.contains(key + "_tokensPerSec")) {
+            return null;
+        }
+        return new Calibration(
+                prefs.getLong(key + "_loadMs", 0),
+                prefs.getLong(key + "_ttftMs", 0),
+                prefs.getFloat(key + "_tokensPerSec", 0),
+                prefs.getFloat(key + "_prefillTokensPerSec", 0));
+    }
+
+    /**
+     * Run the calibration decode if this model hasn't been calibrated on this device yet.
+     * Only uses the engine when it is already loaded and idle, so it never delays a user request;
+     * if it can't run now it runs the next time this is called.
+     */
+    public void calibrateIfNeeded(String modelPath) {
+        if (getCalibration(modelPath) != null) {
+            return;
+        }
+        long loadMs = LlmEngineManager.getInstance().getLastInitMs(modelPath);
+        try {
+            Calibration calibration = LlmEngineManager.getInstance().runIfIdle(modelPath, llm -> {
+                GenerationHandle handle = new GenerationHandle(new GenerationProfile(
+                        "calibration", CALIBRATION_TOKENS, 0.8f, GenerationProfile.CHAT.getTopK(), new String[0]));
+                // a measurement run, not a user generation, keep it out of the histograms
+                handle.setRecordMetrics(false);
+                LlmInferenceSession session = LlmInferenceSession.createFromOptions(llm,
+                        handle.getProfile().toSessionOptions());
+                try {
+                    int promptTokens = llm.sizeInTokens(CALIBRATION_PROMPT);
+                    session.addQueryChunk(CALIBRATION_PROMPT);
+                    long start = LlmMetrics.now();
+                    handle.generate(session, null);
+                    long totalMs = LlmMetrics.now() - start;
+                    long ttftMs = handle.getFirstTokenMs();
+                    int tokens = handle.getDecodedTokens();
+                    if (ttftMs < 0 || tokens < 2 || totalMs <= ttftMs) {
+                        return null;
+                    }
+                    double tokensPerSec = (tokens - 1) * 1000.0 / (totalMs - ttftMs);
+                    double prefillTokensPerSec = promptTokens * 1000.0 / Math.max(1, ttftMs);
+                    return new Calibration(loadMs, ttftMs, tokensPerSec, prefillTokensPerSec);
+                } finally {
+                    session.close();
+                }
+            });
+            if (calibration == null) {
+                Log.d(TAG, "Engine busy or not loaded, calibration postponed");
+                return;
+            }
+            save(modelPath, calibration);
+            Log.i(TAG, "Calibrated " + modelPath + ": load " + calibration.loadMs + " ms, ttft "
+                    + calibration.ttftMs + " ms, " + calibration.tokensPerSec + " tok/s -> chat cap "
+                    + calibration.chatMaxTokens + ", journal cap " + calibration.journalMaxTokens
+                    + ", topK " + calibration.topK + ", history budget " + calibration.historyBudget);
+        } catch (Exception e) {
+            Log.e(TAG, "Calibration failed: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized void save(String modelPath, Calibration calibration) {
+        String key = calibrationKey(modelPath);
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong(key + "_loadMs", calibration.loadMs)
+                .putLong(key + "_ttftMs", calibration.ttftMs)
+                .putFloat(key + "_tokensPerSec", (float) calibration.tokensPerSec)
+                .putFloat(key + "_prefillTokensPerSec", (float) calibration.prefillTokensPerSec)
+                .apply();
+    }
+
+    // a different model file or a system update means the numbers no longer hold.
+    // Called with the lock held
+    private String calibrationKey(String modelPath) {
+        String key = calibrationKeys.get(modelPath);
+        if (key == null) {
+            File file = new File(modelPath);
+            key = Integer.toHexString((file.getName() + ":" + file.length() + ":" + Build.FINGERPRINT).hashCode());
+            calibrationKeys.put(modelPath, key);
+        }
+        return key;
+    }
+}
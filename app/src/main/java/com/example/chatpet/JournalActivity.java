@@ -8,6 +8,7 @@ import android.view.View;
 import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
+import android.widget.ScrollView;
 import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
@@ -29,6 +30,7 @@ public class JournalActivity extends AppCompatActivity {
     private TextView journalContentTextView;
     private TextView emptyHistoryTextView;
     private LinearLayout journalEntriesContainer;
+    private ScrollView journalScrollView;
 
     // ViewModel
     private JournalViewModel journalViewModel;
@@ -59,6 +61,15 @@ public class JournalActivity extends AppCompatActivity {
         Log.d(TAG, "JournalActivity created");
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Leaving the journal screen, stop decoding an entry nobody is waiting for
+        if (isFinishing()) {
+            journalViewModel.cancelGeneration();
+        }
+    }
+
     private void initializeViews() {
         generateJournalButton = findViewById(R.id.generateJournalButton);
         loadingProgressBar = findViewById(R.id.loadingProgressBar);
@@ -68,12 +79,27 @@ public class JournalActivity extends AppCompatActivity {
         journalContentTextView = findViewById(R.id.journalContentTextView);
         emptyHistoryTextView = findViewById(R.id.emptyHistoryTextView);
         journalEntriesContainer = findViewById(R.id.journalEntriesContainer);
+        journalScrollView = findViewById(R.id.journalScrollView);
+
+        // fetch the next page of older entries when the user scrolls near the end
+        journalScrollView.setOnScrollChangeListener((v, scrollX, scrollY, oldScrollX, oldScrollY) ->
+                loadMoreIfNearEnd());
+    }
+
+    // also called after a page is shown: a list shorter than the screen can't be scrolled,
+    // so keep loading until it fills the screen or the history runs out
+    private void loadMoreIfNearEnd() {
+        View content = journalScrollView.getChildAt(0);
+        int remaining = content.getBottom() - (journalScrollView.getScrollY() + journalScrollView.getHeight());
+        if (remaining < journalScrollView.getHeight() / 2 && journalViewModel.hasMoreJournalHistory()) {
+            journalViewModel.loadMoreJournalHistory(getApplicationContext(), username);
+        }
     }
 
     private void setupButtonListeners() {
         generateJournalButton.setOnClickListener(v -> {
             Log.d(TAG, "Generate Journal button clicked");
-            String modelPath = getString(R.string.model_path);
+            String modelPath = ModelRegistry.getInstance(this).pathFor(GenerationProfile.JOURNAL);
             journalViewModel.generateJournal(getApplicationContext(), modelPath, username);
         });
     }
@@ -175,8 +201,8 @@ public class JournalActivity extends AppCompatActivity {
         // Hide empty message
         emptyHistoryTextView.setVisibility(View.GONE);
         
-        // Add each journal entry as a card
-        for (int i = entries.size() - 1; i >= 0; i--) { // Reverse order (newest first)
+        // Add each journal entry as a card, pages arrive newest first
+        for (int i = 0; i < entries.size(); i++) {
             JournalEntry entry = entries.get(i);
             
             // Create a card for each entry
@@ -214,5 +240,7 @@ public class JournalActivity extends AppCompatActivity {
         }
         
         Log.d(TAG, "Journal history display updated");
+        // measure once the new cards are laid out
+        journalScrollView.post(this::loadMoreIfNearEnd);
     }
 }
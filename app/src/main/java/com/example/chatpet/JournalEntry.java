@@ -76,6 +76,10 @@ public class JournalEntry {
     {
         return entryId;
     }
+    public int getDbEntryId()
+    {
+        return dbEntryId;
+    }
     public String getJournalText()
     {
         return journalText;
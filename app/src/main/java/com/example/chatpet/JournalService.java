@@ -1,16 +1,22 @@
 package com.example.chatpet;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.util.Log;
 
 import com.google.mediapipe.tasks.genai.llminference.LlmInference;
+import com.google.mediapipe.tasks.genai.llminference.LlmInferenceSession;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class JournalService {
     private static final String TAG = "JournalService";
+
+    // held while checking for today's entry and inserting one, by both the journal screen and
+    // DailyJournalJobService, so the two can't each write an entry for the same day
+    static final Object ENTRY_WRITE_LOCK = new Object();
     private final Context context;
     private final UserRepository userRepository;
 
@@ -20,11 +26,58 @@ public class JournalService {
     }
 
     public boolean saveJournalEntry(String username, JournalEntry entry) {
-        return userRepository.saveJournalEntry(username, entry);
+        synchronized (ENTRY_WRITE_LOCK) {
+            return userRepository.saveJournalEntry(username, entry);
+        }
+    }
+
+    /**
+     * Save the entry unless the user already has one for its date, the check and the insert happen
+     * under ENTRY_WRITE_LOCK. Returns false if one exists, throws if the insert fails.
+     */
+    public boolean saveIfFirstForDate(String username, JournalEntry entry) {
+        synchronized (ENTRY_WRITE_LOCK) {
+            JournalEntry latest = userRepository.getLatestJournalEntry(username);
+            if (latest != null && entry.getDate().equals(latest.getDate())) {
+                return false;
+            }
+            if (!userRepository.saveJournalEntry(username, entry)) {
+                throw new IllegalStateException("Failed to save journal entry");
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Generate the text of a new journal entry on the shared engine, blocks until decoded.
+     * Runs in a throwaway session so the handle can cancel it at a token boundary.
+     * Throws if the model wrote nothing but a preamble, so an empty entry is never saved.
+     */
+    public String generateJournalText(Context context, String modelPath, String prompt, GenerationHandle handle)
+            throws Exception {
+        String journalText = LlmEngineManager.getInstance().runExclusive(context, modelPath, llm -> {
+            handle.throwIfCancelled();
+            LlmInferenceSession session = LlmInferenceSession.createFromOptions(llm,
+                    handle.getProfile().toSessionOptions());
+            try {
+                session.addQueryChunk(prompt);
+                handle.setPromptTokens(new ChatContextBuilder().countTokens(llm, prompt));
+                return handle.generate(session, null);
+            } finally {
+                session.close();
+            }
+        });
+        if (journalText == null || journalText.isEmpty()) {
+            throw new IllegalStateException("LLM returned no journal entry.");
+        }
+        return journalText;
     }
 
-    public List<JournalEntry> getAllJournals(String username) {
-        return userRepository.getJournalEntries(username);
+    /**
+     * A page of journal entries, newest first, older than beforeId (0 for the newest page)
+     */
+    public List<JournalEntry> getJournalPage(String username, int beforeId, int pageSize) {
+        return userRepository.getJournalEntriesPage(username, beforeId, pageSize);
     }
 
     public String getLatestJournalText(String username) {
@@ -35,33 +88,24 @@ public class JournalService {
         return "";
     }
 
-    @SuppressLint("DefaultLocale")
     String formatPrompt(JournalEntry entry, String previousJournal) {
-        return String.format(
-                "You are a %s named %s at level %d, level progress %d, " +
-                        "today's level experience gained %d. Today is %s, time is %s, " +
-                        "and this was your previous journal entry %s.\n" +
-                        "Write a concise diary entry about your day. Keep it short and to the point.\n" +
-                        "Today's Stats:\n" +
-                        "- Happiness: %d/100\n" +
-                        "- Energy: %d/100\n" +
-                        "- Hunger: %d/100\n" +
-                        "- Times chatted: %d\n" +
-                        "- Times fed: %d\n" +
-                        "- Times tucked in: %d\n" +
-                        "Write a journal entry from the pet's perspective about the day " +
-                        "based on the information above:\n" +
-                        "Level 1 = teen\n" +
-                        "Level 2 = young adult\n" +
-                        "Level 3 = adult.\n" +
-                        "Exclude any other statements than your current role as this pet, such as Okay here is your journal.\n" +
-                        "Don't start the journal with Okay.",
-                entry.getPetType(), entry.getPetName(), entry.getPetLevel(), entry.getLevelProgress(),
-                entry.getExpGained(), entry.getDate(), entry.getTime(),
-                previousJournal.isEmpty() ? "None" : previousJournal,
-                entry.getHappiness(), entry.getEnergy(), entry.getHunger(),
-                entry.getTimesChatted(), entry.getTimesFed(), entry.getTimesTuckedIn()
-        );
+        // template is compiled once, only the variable slots are filled here
+        Map<String, String> values = new HashMap<>(32);
+        values.put("petType", String.valueOf(entry.getPetType()));
+        values.put("petName", String.valueOf(entry.getPetName()));
+        values.put("level", Integer.toString(entry.getPetLevel()));
+        values.put("levelProgress", Integer.toString(entry.getLevelProgress()));
+        values.put("expGained", Integer.toString(entry.getExpGained()));
+        values.put("date", String.valueOf(entry.getDate()));
+        values.put("time", String.valueOf(entry.getTime()));
+        values.put("previousJournal", previousJournal.isEmpty() ? "None" : previousJournal);
+        values.put("happiness", Integer.toString(entry.getHappiness()));
+        values.put("energy", Integer.toString(entry.getEnergy()));
+        values.put("hunger", Integer.toString(entry.getHunger()));
+        values.put("timesChatted", Integer.toString(entry.getTimesChatted()));
+        values.put("timesFed", Integer.toString(entry.getTimesFed()));
+        values.put("timesTuckedIn", Integer.toString(entry.getTimesTuckedIn()));
+        return PromptTemplates.journal().render(values);
     }
 
 }
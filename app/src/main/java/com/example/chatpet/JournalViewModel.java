@@ -10,7 +10,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import com.google.mediapipe.tasks.genai.llminference.LlmInference;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class JournalViewModel extends ViewModel
@@ -23,19 +23,44 @@ public class JournalViewModel extends ViewModel
     private final MutableLiveData<List<JournalEntry>> _journalHistory = new MutableLiveData<>(new ArrayList<>());
     private final LiveData<List<JournalEntry>> journalHistory = _journalHistory;
 
-    // Keep LlmInference instance if you plan to make multiple calls
-    // Ensure it's closed properly in onCleared()
-    private LlmInference llmInference = null;
+    // journal history is loaded a page at a time as the user scrolls, newest first
+    static final int HISTORY_PAGE_SIZE = 10;
+    // entries loaded so far and the keyset cursor for the next page (only touched on the db executor)
+    private final List<JournalEntry> loadedEntries = new ArrayList<>();
+    private int oldestLoadedId = 0;
+    private volatile boolean hasMoreHistory = true;
+    private final AtomicBoolean pageLoadPending = new AtomicBoolean(false);
+
+    // Shared engine, also used by ChatService so only one copy of the model is loaded
+    private final LlmEngineManager engineManager = LlmEngineManager.getInstance();
 
     // ExecutorService for background operations (replacement for coroutines)
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
 
     private JournalService journalService;
+    // page reads go through its db executor, so they don't wait behind a journal being decoded
+    private UserRepository userRepository;
+
+    // true while a journal request is queued but not started yet
+    private final AtomicBoolean journalRequestPending = new AtomicBoolean(false);
+    private volatile long lastQueueWaitMs = 0;
+
+    // journal generation currently running, cancelled when the user leaves
+    private volatile GenerationHandle currentGeneration;
+
+    public JournalViewModel() {
+        // keep the shared engine loaded while this screen is alive
+        engineManager.acquire();
+    }
 
     public LiveData<LlmUiState> getUiState() {
         return uiState;
     }
     
+    public long getLastQueueWaitMs() {
+        return lastQueueWaitMs;
+    }
+
     public LiveData<List<JournalEntry>> getJournalHistory() {
         return journalHistory;
     }
@@ -44,31 +69,90 @@ public class JournalViewModel extends ViewModel
         if (journalService == null) {
             journalService = new JournalService(context);
         }
+        if (userRepository == null) {
+            userRepository = new UserRepository(context);
+        }
     }
     
+    /**
+     * (Re)load the newest page of the journal history, older pages come from loadMoreJournalHistory
+     */
     public void loadJournalHistory(Context context, String username) {
         initializeJournalService(context);
-        executorService.execute(() -> {
-            List<JournalEntry> entries = journalService.getAllJournals(username);
-            _journalHistory.postValue(entries);
-            Log.d(TAG, "Loaded " + entries.size() + " journal entries");
-        });
+        userRepository.submit(() -> {
+            loadedEntries.clear();
+            oldestLoadedId = 0;
+            hasMoreHistory = true;
+            loadNextPage(username);
+            return null;
+        }, null);
+    }
+
+    /**
+     * Append the next older page, e.g. when the user scrolls to the end of the list.
+     * Does nothing if everything is loaded or a page is already on its way.
+     */
+    public void loadMoreJournalHistory(Context context, String username) {
+        initializeJournalService(context);
+        if (!hasMoreHistory || !pageLoadPending.compareAndSet(false, true)) {
+            return;
+        }
+        userRepository.submit(() -> {
+            pageLoadPending.set(false);
+            if (hasMoreHistory) {
+                loadNextPage(username);
+            }
+            return null;
+        }, null);
+    }
+
+    public boolean hasMoreJournalHistory() {
+        return hasMoreHistory;
+    }
+
+    // runs on the db executor
+    private void loadNextPage(String username) {
+        List<JournalEntry> page = journalService.getJournalPage(username, oldestLoadedId, HISTORY_PAGE_SIZE);
+        if (!page.isEmpty()) {
+            oldestLoadedId = page.get(page.size() - 1).getDbEntryId();
+        }
+        hasMoreHistory = page.size() == HISTORY_PAGE_SIZE;
+        loadedEntries.addAll(page);
+        _journalHistory.postValue(new ArrayList<>(loadedEntries));
+        Log.d(TAG, "Loaded " + page.size() + " journal entries, " + loadedEntries.size() + " shown");
     }
     
     public void generateJournal(Context context, String modelPath, String username)
     {
         initializeJournalService(context);
         
-        LlmUiState currentState = _uiState.getValue();
-        if (currentState instanceof LlmUiState.Loading) {
-            Log.d(TAG, "Already loading, request ignored.");
+        // A tap while another journal request is still waiting is merged into it;
+        // one arriving while a journal is being written runs right after it
+        if (!journalRequestPending.compareAndSet(false, true)) {
+            Log.d(TAG, "Journal request already queued, coalesced.");
             return;
         }
 
+        // the user is waiting now, don't queue behind the background daily journal
+        DailyJournalJobService.cancelRunning();
         _uiState.postValue(LlmUiState.Loading.INSTANCE);
+        final long enqueuedAt = System.currentTimeMillis();
 
         executorService.execute(() -> {
+            journalRequestPending.set(false);
+            lastQueueWaitMs = System.currentTimeMillis() - enqueuedAt;
+            Log.d(TAG, "Journal request waited " + lastQueueWaitMs + " ms");
+            LlmMetrics.getInstance().recordQueueWait(GenerationProfile.JOURNAL.getName(), lastQueueWaitMs);
             try {
+                // today's entry was already written in the background, just show it
+                if (DailyJournalJobService.takePregeneratedEntry(context, username)) {
+                    String journalText = journalService.getLatestJournalText(username);
+                    Log.i(TAG, "Showing pre-generated journal entry: " + journalText);
+                    _uiState.postValue(new LlmUiState.Success(journalText));
+                    loadJournalHistory(context, username);
+                    return;
+                }
+
                 // new journal entry
                 JournalEntry newEntry = new JournalEntry();
                 newEntry.setUsername(username);
@@ -77,26 +161,27 @@ public class JournalViewModel extends ViewModel
                 Log.i(TAG, "Starting LLM response generation for prompt: " + prompt);
 
 
-                // Initialize LLM Inference if not already done or if it needs to be fresh
-                // For simplicity, creating it each time. For performance, you might cache it.
-                // Ensure this part is also efficient or handled if llmInference can be reused.
-                LlmInference.LlmInferenceOptions taskOptions =
-                        LlmInference.LlmInferenceOptions.builder()
-                                .setModelPath(modelPath)
-                                .setMaxTopK(64) // Add other options as needed (maxTokens, temperature, etc.)
-                                .build();
-
-                // createFromOptions can also be blocking
-                llmInference = LlmInference.createFromOptions(context, taskOptions);
-                Log.d(TAG, "LlmInference instance created/reused.");
+                // Actual blocking call, borrows the shared engine (loaded only if nobody has it yet)
+                // and decodes in a throwaway session so it can be cancelled at a token boundary
+                GenerationHandle handle = new GenerationHandle(
+                        InferenceTuning.getInstance(context).tune(GenerationProfile.JOURNAL));
+                currentGeneration = handle;
+                String journalText = journalService.generateJournalText(context, modelPath, prompt, handle);
 
-                // Actual blocking call
-                String journalText = llmInference.generateResponse(prompt);
-
-                if (journalText != null) {
-                    // save to database
+                if (journalText != null && !journalText.isEmpty()) {
+                    // save to database, unless the daily job wrote today's entry while we were decoding
                     newEntry.setJournalText(journalText);
-                    boolean saved = journalService.saveJournalEntry(username, newEntry);
+                    boolean saved;
+                    synchronized (JournalService.ENTRY_WRITE_LOCK) {
+                        if (DailyJournalJobService.takePregeneratedEntry(context, username)) {
+                            String pregenerated = journalService.getLatestJournalText(username);
+                            Log.i(TAG, "Showing journal entry pre-generated meanwhile: " + pregenerated);
+                            _uiState.postValue(new LlmUiState.Success(pregenerated));
+                            loadJournalHistory(context, username);
+                            return;
+                        }
+                        saved = journalService.saveJournalEntry(username, newEntry);
+                    }
                     
                     if (saved) {
                         Log.i(TAG, "Journal entry saved successfully: " + journalText);
@@ -112,30 +197,33 @@ public class JournalViewModel extends ViewModel
                     _uiState.postValue(new LlmUiState.Error("LLM returned no journal entry."));
                 }
 
+            } catch (GenerationHandle.CancelledException e) {
+                Log.d(TAG, "Journal generation cancelled");
+                _uiState.postValue(LlmUiState.Idle.INSTANCE);
             } catch (Exception e) {
                 Log.e(TAG, "Error generating LLM response for journal entry: " + e.getMessage(), e);
                 String errorMessage = e.getMessage() != null ? e.getMessage() : "An unknown error occurred";
                 _uiState.postValue(new LlmUiState.Error(errorMessage));
             } finally {
-                // Close the instance if you create it fresh each time,
-                // or manage its lifecycle if you reuse it.
-                try {
-                    if (llmInference != null) {
-                        llmInference.close();
-                        llmInference = null; // Nullify if creating fresh next time
-                    }
-                    Log.d(TAG, "LlmInference instance closed.");
-                } catch (Exception e) {
-                    Log.e(TAG, "Error closing LlmInference: " + e.getMessage(), e);
-                }
-                // Optionally, you might want to revert to Idle state after an error
-                // or if the user should be able to make another request.
+                currentGeneration = null;
             }
         });
     }
+
+    /**
+     * Stop the journal being generated, e.g. when the user leaves the screen
+     */
+    public void cancelGeneration() {
+        GenerationHandle running = currentGeneration;
+        if (running != null) {
+            running.cancel();
+        }
+    }
     
     @Override
     protected void onCleared() {
+        cancelGeneration();
         executorService.shutdown();
+        engineManager.release();
     }
 }
\ No newline at end of file
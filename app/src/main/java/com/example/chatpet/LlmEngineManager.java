@@ -0,0 +1,402 @@
+package com.example.chatpet;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.mediapipe.tasks.genai.llminference.LlmInference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Process-wide holder for the LLM engines.
+ * Chat and journal generation borrow shared LlmInference instances instead of each loading
+ * their own copy of a model. Engines are loaded lazily per model file (see ModelRegistry),
+ * and only one model is resident at a time: switching models closes the idle one before loading,
+ * so peak memory stays at a single model.
+ * Users call acquire()/release() to keep the engines alive, and every engine call goes
+ * through runExclusive() so only one generation runs at a time.
+ */
+public class LlmEngineManager {
+    private static final String TAG = "LlmEngineManager";
+
+    private static LlmEngineManager instance;
+
+    // fair lock so chat and journal requests get the engine in arrival order
+    private final ReentrantLock engineLock = new ReentrantLock(true);
+
+    // at most this many models stay loaded, the idle ones are closed before another is loaded
+    // (two models at once, e.g. the 1B chat and the E2B journal model, would stack their memory)
+    private static final int MAX_LOADED_ENGINES = 1;
+
+    // loaded engines by model path, least recently used first
+    private final LinkedHashMap<String, LlmInference> engines = new LinkedHashMap<>(4, 0.75f, true);
+    private volatile boolean evictRequested = false;
+    // how long the last load of each model took
+    private final Map<String, Long> initTimes = new HashMap<>();
+    private int refCount = 0;
+    private boolean closePending = false;
+
+    // Background warm-up so the first chat message doesn't pay for the model load
+    private final ExecutorService warmupExecutor = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "llm-warmup"));
+    private Future<?> warmupFuture;
+    private volatile boolean warmupCancelled = false;
+
+    // true while at least one model is loaded and ready to decode
+    private final MutableLiveData<Boolean> engineReady = new MutableLiveData<>(false);
+
+    private boolean memoryCallbacksRegistered = false;
+
+    // run before an engine is closed, e.g. to close sessions created from it
+    private final List<EngineCloseListener> engineCloseListeners = new CopyOnWriteArrayList<>();
+
+    public interface EngineTask<T> {
+        T run(LlmInference llm) throws Exception;
+    }
+
+    public interface EngineCloseListener {
+        void onEngineClosing(LlmInference engine);
+    }
+
+    private LlmEngineManager() {}
+
+    public static synchronized LlmEngineManager getInstance() {
+        if (instance == null) {
+            instance = new LlmEngineManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Register a user of the engine, the engine stays loaded while at least one user holds it
+     */
+    public synchronized void acquire() {
+        refCount++;
+        closePending = false;
+        Log.d(TAG, "Engine acquired, ref count: " + refCount);
+    }
+
+    /**
+     * Drop a user of the engine, closes the model once nobody holds it anymore.
+     * If a generation is still running the close is deferred until it finishes.
+     */
+    public void release() {
+        synchronized (this) {
+            if (refCount > 0) {
+                refCount--;
+            }
+            Log.d(TAG, "Engine released, ref count: " + refCount);
+            if (refCount > 0) {
+                return;
+            }
+        }
+        // don't block the caller (usually the main thread) behind a running generation
+        closeIfUnused();
+    }
+
+    public synchronized int getRefCount() {
+        return refCount;
+    }
+
+    public synchronized boolean isLoaded() {
+        return !engines.isEmpty();
+    }
+
+    public synchronized long getLastInitMs(String modelPath) {
+        Long initMs = initTimes.get(modelPath);
+        return initMs != null ? initMs : 0;
+    }
+
+    public synchronized boolean isLoaded(String modelPath) {
+        return engines.containsKey(modelPath);
+    }
+
+    public void addEngineCloseListener(EngineCloseListener listener) {
+        engineCloseListeners.add(listener);
+    }
+
+    public LiveData<Boolean> getEngineReady() {
+        return engineReady;
+    }
+
+    /**
+     * Start loading the model in the background at low priority, e.g. right after login.
+     * Does nothing if the model is already loaded or a warm-up is in progress.
+     */
+    public synchronized void prewarm(Context context, String modelPath) {
+        if (engines.containsKey(modelPath)) {
+            Log.d(TAG, "Engine already warm");
+            return;
+        }
+        if (warmupFuture != null && !warmupFuture.isDone()) {
+            Log.d(TAG, "Warm-up already running");
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        warmupCancelled = false;
+        warmupFuture = warmupExecutor.submit(() -> {
+            if (warmupCancelled || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                long start = System.currentTimeMillis();
+                runExclusive(appContext, modelPath, llm -> null);
+                Log.d(TAG, "Warm-up finished in " + (System.currentTimeMillis() - start) + " ms");
+                // measure this device's speed once, while nobody is waiting for a reply yet
+                InferenceTuning.getInstance(appContext).calibrateIfNeeded(modelPath);
+            } catch (Exception e) {
+                Log.e(TAG, "Warm-up failed: " + e.getMessage(), e);
+            }
+            if (warmupCancelled) {
+                // user left while we were loading, don't keep a model nobody will use
+                closeIfUnused();
+            }
+        });
+        Log.d(TAG, "Warm-up scheduled for " + modelPath);
+    }
+
+    /**
+     * Stop a pending warm-up. A load that already started can't be interrupted,
+     * so the model is closed right after it if no screen has acquired it meanwhile.
+     */
+    public synchronized void cancelPrewarm() {
+        warmupCancelled = true;
+        if (warmupFuture != null && !warmupFuture.isDone()) {
+            warmupFuture.cancel(false);
+            Log.d(TAG, "Warm-up cancelled");
+        }
+        closeIfUnused();
+    }
+
+    private void closeIfUnused() {
+        synchronized (this) {
+            if (refCount > 0) {
+                return;
+            }
+            closePending = true;
+        }
+        if (engineLock.tryLock()) {
+            try {
+                closeIfPending();
+            } finally {
+                engineLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Run a task against the shared engine, loading the model first if needed.
+     * Calls are serialized, this blocks until the engine is free.
+     */
+    public <T> T runExclusive(Context context, String modelPath, EngineTask<T> task) throws Exception {
+        long waitStart = LlmMetrics.now();
+        engineLock.lock();
+        LlmMetrics.getInstance().recordEngineQueueWait(LlmMetrics.now() - waitStart);
+        try {
+            LlmInference engine = getOrLoadEngine(context, modelPath);
+            return task.run(engine);
+        } finally {
+            closeIfPending();
+            engineLock.unlock();
+        }
+    }
+
+    /**
+     * Run a background task only if the engine is already loaded with this model and nobody is using it.
+     * Returns null without running the task otherwise, so idle work never delays a user request
+     * or pays for a model load.
+     */
+    public <T> T runIfIdle(String modelPath, EngineTask<T> task) throws Exception {
+        if (!engineLock.tryLock()) {
+            return null;
+        }
+        try {
+            LlmInference engine;
+            synchronized (this) {
+                engine = engines.get(modelPath);
+            }
+            if (engine == null) {
+                return null;
+            }
+            return task.run(engine);
+        } finally {
+            closeIfPending();
+            engineLock.unlock();
+        }
+    }
+
+    // must be called with engineLock held
+    private LlmInference getOrLoadEngine(Context context, String modelPath) {
+        evictIfRequested();
+        synchronized (this) {
+            LlmInference loaded = engines.get(modelPath);
+            if (loaded != null) {
+                Log.d(TAG, "Reusing existing LLM instance for " + modelPath);
+                return loaded;
+            }
+        }
+
+        // make room by closing the least recently used models, they are idle since we hold engineLock
+        while (true) {
+            String eldest;
+            synchronized (this) {
+                if (engines.size() < MAX_LOADED_ENGINES) {
+                    break;
+                }
+                eldest = engines.keySet().iterator().next();
+            }
+            Log.d(TAG, "Evicting " + eldest + " to load " + modelPath);
+            closeEngine(eldest);
+        }
+
+        registerMemoryCallbacks(context);
+
+        // Keep the XNNPack weight cache unless it belongs to another model or looks damaged
+        XnnpackCacheManager cacheManager = new XnnpackCacheManager(context);
+        cacheManager.prepareForLoad(modelPath);
+
+        Log.d(TAG, "Initializing LLM model " + modelPath + "...");
+        ModelRegistry.ModelSpec spec = ModelRegistry.getInstance(context).specForPath(modelPath);
+        LlmInference.LlmInferenceOptions options =
+                LlmInference.LlmInferenceOptions.builder()
+                        .setModelPath(modelPath)
+                        .setMaxTopK(spec.maxTopK)
+                        .setMaxTokens(spec.maxTokens)
+                        .build();
+
+        long loadStart = LlmMetrics.now();
+        LlmInference engine;
+        try {
+            engine = LlmInference.createFromOptions(context.getApplicationContext(), options);
+        } catch (Exception e) {
+            // a corrupted cache can make the load fail, drop it and retry once from scratch
+            Log.e(TAG, "LLM load failed, retrying without XNNPack cache: " + e.getMessage(), e);
+            cacheManager.invalidate(modelPath);
+            engine = LlmInference.createFromOptions(context.getApplicationContext(), options);
+        }
+        long initMs = LlmMetrics.now() - loadStart;
+        LlmMetrics.getInstance().recordEngineInit(initMs);
+        cacheManager.onLoadSucceeded(modelPath);
+        synchronized (this) {
+            engines.put(modelPath, engine);
+            initTimes.put(modelPath, initMs);
+        }
+        engineReady.postValue(true);
+        Log.d(TAG, "LLM initialized successfully");
+        return engine;
+    }
+
+    // must be called with engineLock held
+    private void closeIfPending() {
+        boolean shouldClose;
+        synchronized (this) {
+            shouldClose = closePending && refCount == 0;
+            closePending = false;
+        }
+        if (shouldClose) {
+            closeAllEngines();
+        }
+    }
+
+    // must be called with engineLock held, keeps only the most recently used model after memory pressure
+    private void evictIfRequested() {
+        if (!evictRequested) {
+            return;
+        }
+        evictRequested = false;
+        List<String> idle;
+        synchronized (this) {
+            idle = new ArrayList<>(engines.keySet());
+        }
+        // the last key is the most recently used one
+        for (int i = 0; i < idle.size() - 1; i++) {
+            Log.d(TAG, "Evicting " + idle.get(i) + " under memory pressure");
+            closeEngine(idle.get(i));
+        }
+    }
+
+    // close idle models when the system is low on memory
+    private synchronized void registerMemoryCallbacks(Context context) {
+        if (memoryCallbacksRegistered) {
+            return;
+        }
+        memoryCallbacksRegistered = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                    evictRequested = true;
+                    if (engineLock.tryLock()) {
+                        try {
+                            evictIfRequested();
+                        } finally {
+                            engineLock.unlock();
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {}
+
+            @Override
+            public void onLowMemory() {
+                onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    private void closeAllEngines() {
+        List<String> loaded;
+        synchronized (this) {
+            loaded = new ArrayList<>(engines.keySet());
+        }
+        for (String modelPath : loaded) {
+            closeEngine(modelPath);
+        }
+    }
+
+    private void closeEngine(String modelPath) {
+        LlmInference toClose;
+        synchronized (this) {
+            toClose = engines.remove(modelPath);
+            if (engines.isEmpty()) {
+                engineReady.postValue(false);
+            }
+        }
+        if (toClose != null) {
+            for (EngineCloseListener listener : engineCloseListeners) {
+                try {
+                    listener.onEngineClosing(toClose);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error in engine close listener: " + e.getMessage(), e);
+                }
+            }
+            try {
+                toClose.close();
+                Log.d(TAG, "LLM instance closed");
+            } catch (Exception e) {
+                Log.e(TAG, "Error closing LLM: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.chatpet;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-process counters and latency histograms for LLM work.
+ * Engine load, queue wait, time to first token, total generation time, token counts and
+ * decode speed are recorded per task into fixed-bucket histograms, which can be read
+ * in-process or dumped to a JSON file to compare runs.
+ */
+public class LlmMetrics {
+    private static final String TAG = "LlmMetrics";
+
+    // histogram names, generation metrics are prefixed with the task, e.g. "chat.ttft_ms"
+    public static final String ENGINE_INIT_MS = "engine.init_ms";
+    public static final String ENGINE_QUEUE_WAIT_MS = "engine.queue_wait_ms";
+    public static final String QUEUE_WAIT_MS = "queue_wait_ms";
+    public static final String TTFT_MS = "ttft_ms";
+    public static final String GENERATION_MS = "generation_ms";
+    public static final String PROMPT_TOKENS = "prompt_tokens";
+    public static final String OUTPUT_TOKENS = "output_tokens";
+    public static final String TOKENS_PER_SEC = "tokens_per_sec";
+
+    // upper bounds of each bucket, the last bucket takes everything above
+    private static final long[] MS_BUCKETS = {
+            10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+    private static final long[] TOKEN_BUCKETS = {8, 16, 32, 64, 128, 256, 512, 1024};
+    private static final long[] RATE_BUCKETS = {1, 2, 5, 10, 15, 20, 30, 50, 100};
+
+    private static LlmMetrics instance;
+
+    private long cancelledGenerations = 0;
+    private long wastedTokens = 0;
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+
+    /**
+     * Fixed-bucket histogram, counts[i] holds values <= bounds[i], the last count everything larger
+     */
+    public static class Histogram {
+        private final long[] bounds;
+        private final long[] counts;
+        private long count = 0;
+        private double sum = 0;
+        private double min = Double.MAX_VALUE;
+        private double max = 0;
+
+        Histogram(long[] bounds) {
+            this.bounds = bounds;
+            this.counts = new long[bounds.length + 1];
+        }
+
+        Histogram(Histogram other) {
+            this.bounds = other.bounds;
+            this.counts = other.counts.clone();
+            this.count = other.count;
+            this.sum = other.sum;
+            this.min = other.min;
+            this.max = other.max;
+        }
+
+        void record(double value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public double getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile (0-100), max for the overflow bucket
+         */
+        public double getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i < bounds.length ? Math.min(bounds[i], max) : max;
+                }
+            }
+            return max;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("mean", getMean());
+            json.put("min", getMin());
+            json.put("max", getMax());
+            json.put("p50", getPercentile(50));
+            json.put("p90", getPercentile(90));
+            json.put("p99", getPercentile(99));
+            JSONArray buckets = new JSONArray();
+            for (int i = 0; i < counts.length; i++) {
+                JSONObject bucket = new JSONObject();
+                bucket.put("le", i < bounds.length ? String.valueOf(bounds[i]) : "inf");
+                bucket.put("count", counts[i]);
+                buckets.put(bucket);
+            }
+            json.put("buckets", buckets);
+            return json;
+        }
+    }
+
+    private LlmMetrics() {}
+
+    public static synchronized LlmMetrics getInstance() {
+        if (instance == null) {
+            instance = new LlmMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Milliseconds since boot, for measuring durations passed to the record methods
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * A generation was cancelled after decoding wastedTokens tokens nobody will read
+     */
+    public synchronized void recordCancellation(String task, int wastedTokens) {
+        cancelledGenerations++;
+        this.wastedTokens += wastedTokens;
+        Log.d(TAG, "Cancelled " + task + " generation, wasted tokens: " + wastedTokens
+                + " (total cancelled " + cancelledGenerations + ", wasted " + this.wastedTokens + ")");
+    }
+
+    public synchronized void recordEngineInit(long durationMs) {
+        record(ENGINE_INIT_MS, MS_BUCKETS, durationMs);
+        Log.d(TAG, "Engine init took " + durationMs + " ms");
+    }
+
+    /**
+     * Time spent waiting for the shared engine to be free
+     */
+    public synchronized void recordEngineQueueWait(long waitMs) {
+        record(ENGINE_QUEUE_WAIT_MS, MS_BUCKETS, waitMs);
+    }
+
+    /**
+     * Time a request of this task spent in its screen's queue before it asked for the engine
+     */
+    public synchronized void recordQueueWait(String task, long waitMs) {
+        record(task + "." + QUEUE_WAIT_MS, MS_BUCKETS, waitMs);
+    }
+
+    /**
+     * A finished generation. ttftMs is -1 if no token was decoded.
+     */
+    public synchronized void recordGeneration(String task, long ttftMs, long totalMs,
+                                              int promptTokens, int outputTokens) {
+        if (ttftMs >= 0) {
+            record(task + "." + TTFT_MS, MS_BUCKETS, ttftMs);
+        }
+        record(task + "." + GENERATION_MS, MS_BUCKETS, totalMs);
+        if (promptTokens >= 0) {
+            record(task + "." + PROMPT_TOKENS, TOKEN_BUCKETS, promptTokens);
+        }
+        record(task + "." + OUTPUT_TOKENS, TOKEN_BUCKETS, outputTokens);
+
+        // decode speed after the first token, so prefill time doesn't skew it
+        double tokensPerSec = -1;
+        long decodeMs = ttftMs >= 0 ? totalMs - ttftMs : 0;
+        if (outputTokens > 1 && decodeMs > 0) {
+            tokensPerSec = (outputTokens - 1) * 1000.0 / decodeMs;
+            record(task + "." + TOKENS_PER_SEC, RATE_BUCKETS, tokensPerSec);
+        }
+        Log.d(TAG, task + " generation: ttft " + ttftMs + " ms, total " + totalMs + " ms, prompt "
+                + promptTokens + " tokens, output " + outputTokens + " tokens"
+                + (tokensPerSec >= 0 ? String.format(Locale.US, ", %.1f tok/s", tokensPerSec) : ""));
+    }
+
+    private void record(String name, long[] bounds, double value) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram(bounds);
+            histograms.put(name, histogram);
+        }
+        histogram.record(value);
+    }
+
+    /**
+     * Copy of a histogram, or null if nothing was recorded under that name yet
+     */
+    public synchronized Histogram getHistogram(String name) {
+        Histogram histogram = histograms.get(name);
+        return histogram != null ? new Histogram(histogram) : null;
+    }
+
+    public synchronized List<String> getHistogramNames() {
+        return new ArrayList<>(histograms.keySet());
+    }
+
+    public synchronized long getCancelledGenerations() {
+        return cancelledGenerations;
+    }
+
+    public synchronized long getWastedTokens() {
+        return wastedTokens;
+    }
+
+    public synchronized void reset() {
+        histograms.clear();
+        cancelledGenerations = 0;
+        wastedTokens = 0;
+    }
+
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("cancelled_generations", cancelledGenerations);
+            json.put("wasted_tokens", wastedTokens);
+            JSONObject all = new JSONObject();
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                all.put(entry.getKey(), entry.getValue().toJson());
+            }
+            json.put("histograms", all);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error building metrics json: " + e.getMessage(), e);
+        }
+        return json;
+    }
+
+    /**
+     * Write all metrics as JSON, e.g. to filesDir so a test run can pull it with adb
+     */
+    public boolean dumpToFile(File file) {
+        String json;
+        try {
+            json = toJson().toString(2);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error formatting metrics: " + e.getMessage(), e);
+            return false;
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+            Log.d(TAG, "Metrics written to " + file.getAbsolutePath());
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing metrics: " + e.getMessage(), e);
+            return false;
+        }
+    }
+}
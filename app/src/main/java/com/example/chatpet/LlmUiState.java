@@ -39,6 +39,39 @@ public abstract class LlmUiState {
         }
     }
     
+    /**
+     * Streaming state - response is being decoded, contains the text generated so far
+     */
+    public static final class Streaming extends LlmUiState {
+        private final String partialText;
+
+        public Streaming(String partialText) {
+            this.partialText = partialText;
+        }
+
+        public String getPartialText() {
+            return partialText;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Streaming streaming = (Streaming) o;
+            return Objects.equals(partialText, streaming.partialText);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(partialText);
+        }
+
+        @Override
+        public String toString() {
+            return "LlmUiState.Streaming(partialText=" + partialText + ")";
+        }
+    }
+
     /**
      * Success state - contains result text
      */
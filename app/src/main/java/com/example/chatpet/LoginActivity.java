@@ -60,14 +60,29 @@ public class LoginActivity extends AppCompatActivity {
         // remove error if there was previously an error
         errorText.setVisibility(View.GONE);
 
-        // try to authenticate with repo
-        User user = userRepository.authenticate(username, password);
+        // try to authenticate with repo, off the main thread
+        loginButton.setEnabled(false);
+        userRepository.authenticateAsync(username, password, user -> onAuthenticated(username, user));
+    }
+
+    private void onAuthenticated(String username, User user) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        loginButton.setEnabled(true);
 
         if (user != null) {
             // android toast notification
             // https://developer.android.com/guide/topics/ui/notifiers/toasts
             Toast.makeText(this, "Welcome back, " + user.getFirstName() + "!", Toast.LENGTH_SHORT).show();
 
+            // start loading the model in the background so the first chat reply is fast
+            LlmEngineManager.getInstance().prewarm(getApplicationContext(),
+                    ModelRegistry.getInstance(this).pathFor(GenerationProfile.CHAT));
+
+            // write the day's journal entry ahead of time while the phone is idle or charging
+            DailyJournalJobService.schedule(getApplicationContext(), username);
+
             // go to main activity
             Intent intent = new Intent(LoginActivity.this, MainActivity.class);
             intent.putExtra("username", username);
@@ -53,6 +53,7 @@ import androidx.compose.ui.unit.dp
 import androidx.lifecycle.viewmodel.compose.viewModel
 import androidx.compose.runtime.livedata.observeAsState
 import androidx.compose.runtime.DisposableEffect
+import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.ui.graphics.Brush
 import androidx.compose.ui.graphics.Color
 import androidx.compose.ui.unit.sp
@@ -91,6 +92,14 @@ class MainActivity : ComponentActivity() {
             }
         }
     }
+
+    override fun onDestroy() {
+        super.onDestroy()
+        // User left the app, don't keep warming up a model nobody will use
+        if (isFinishing) {
+            LlmEngineManager.getInstance().cancelPrewarm()
+        }
+    }
 }
 
 // It's generally better to put Composable functions and related UI states
@@ -109,6 +118,12 @@ fun MainScreen(
     val context = LocalContext.current
     // Observe LiveData from Java ViewModel as Compose State
     val uiState: LlmUiState by chatViewModel.uiState.observeAsState(LlmUiState.Idle.INSTANCE as LlmUiState)
+    // Whether the background warm-up has finished loading the model
+    val engineReady by LlmEngineManager.getInstance().engineReady.observeAsState(false)
+    // Messages waiting behind the reply being generated
+    val queueDepth by chatViewModel.queueDepth.observeAsState(0)
+    // Greeting decoded while the user reads the screen
+    val greeting by chatViewModel.greeting.observeAsState()
 
     var inputText by remember { mutableStateOf("") }
     
@@ -136,8 +151,13 @@ fun MainScreen(
     DisposableEffect(lifecycleOwner) {
         val observer = LifecycleEventObserver { _, event ->
             if (event == Lifecycle.Event.ON_RESUME) {
-                val userRepository = UserRepository(context)
-                petInfo = userRepository.getPetInfo(username)
+                // read on the db thread, the result is posted back to the main thread
+                UserRepository(context).getPetInfoAsync(username) { info -> petInfo = info }
+            } else if (event == Lifecycle.Event.ON_STOP && (context as? MainActivity)?.isFinishing == true) {
+                // Leaving the chat screen, stop decoding a reply nobody will read
+                chatViewModel.cancelGeneration()
+                // keep the latency numbers of this run around for comparison
+                chatViewModel.dumpMetrics(context)
             }
         }
         lifecycleOwner.lifecycle.addObserver(observer)
@@ -146,6 +166,23 @@ fun MainScreen(
         }
     }
     
+    // Greet the user in character from the pet's current meters, at low priority
+    LaunchedEffect(petInfo) {
+        val info = petInfo ?: return@LaunchedEffect
+        val prefs = context.getSharedPreferences("PetActivityPrefs", Context.MODE_PRIVATE)
+        chatViewModel.requestGreeting(
+            context,
+            ModelRegistry.getInstance(context).pathFor(GenerationProfile.FLAVOR_TEXT),
+            username,
+            info.petType,
+            info.petName,
+            prefs.getInt(username + "_level", info.petLevel),
+            prefs.getInt(username + "_happiness", 100),
+            prefs.getInt(username + "_energy", 100),
+            prefs.getInt(username + "_hunger", 100)
+        )
+    }
+
     // Determine which pet image to display based on type and level
     val petImageRes = petInfo?.let { info ->
         when (info.petType) {
@@ -204,7 +241,7 @@ fun MainScreen(
                                 colors = listOf(Color(0xFFFFD1DC), Color(0xFFFFD1DC))),
                             shape = RoundedCornerShape(10.dp)
                         ),
-                    verticalArrangement = if (uiState is LlmUiState.Success) Arrangement.Top else Arrangement.Center,
+                    verticalArrangement = if (uiState is LlmUiState.Success || uiState is LlmUiState.Streaming) Arrangement.Top else Arrangement.Center,
                     horizontalAlignment = Alignment.CenterHorizontally
                 ) {
                     when (val state = uiState) {
@@ -212,16 +249,36 @@ fun MainScreen(
                             val petName = petInfo?.petName ?: "your pet"
                             val petType = petInfo?.petType ?: "companion"
                             Text(
-                                "Hi! I'm $petName, your $petType companion. Ask me anything!",
+                                greeting ?: "Hi! I'm $petName, your $petType companion. Ask me anything!",
                                 style = androidx.compose.material3.MaterialTheme.typography.bodyLarge,
                                 modifier = Modifier.padding(18.dp)
                             )
+                            if (!engineReady) {
+                                Text(
+                                    "$petName is still waking up...",
+                                    style = androidx.compose.material3.MaterialTheme.typography.bodySmall
+                                )
+                            }
                         }
                         is LlmUiState.Loading -> {
                             CircularProgressIndicator()
                             Spacer(modifier = Modifier.height(8.dp))
                             Text("Thinking...")
                         }
+                        is LlmUiState.Streaming -> {
+                            // Render tokens as they are decoded
+                            Text(
+                                state.partialText,
+                                style = androidx.compose.material3.MaterialTheme.typography.bodyLarge,
+                                modifier = Modifier.padding(8.dp)
+                            )
+                            if (queueDepth > 0) {
+                                Text(
+                                    "($queueDepth more message${if (queueDepth > 1) "s" else ""} waiting)",
+                                    style = androidx.compose.material3.MaterialTheme.typography.bodySmall
+                                )
+                            }
+                        }
                         is LlmUiState.Success -> {
                             Text(
                                 state.resultText,
@@ -252,10 +309,11 @@ fun MainScreen(
                 label = { Text("Chat with me!") },
                 modifier = Modifier.fillMaxWidth(),
                 trailingIcon = {
-                    if (uiState !is LlmUiState.Loading && inputText.isNotBlank()) {
+                    // Follow-ups sent while the pet is replying are queued, not dropped
+                    if (inputText.isNotBlank()) {
                         Button(
                             onClick = {
-                                val modelPath = context.getString(R.string.model_path)
+                                val modelPath = ModelRegistry.getInstance(context).pathFor(GenerationProfile.CHAT)
                                 val petName = petInfo?.petName ?: "Daisy"
                                 val petType = petInfo?.petType ?: "Unicorn"
                                 
@@ -334,16 +392,15 @@ fun MainScreen(
             Button(
                 onClick = {
                     // Use the username from the outer scope (already loaded from SharedPreferences)
-                    // Fetch pet information from database
-                    val userRepository = UserRepository(context)
-                    val petInfoForIntent = userRepository.getPetInfo(username)
-                    
-                    val intent = Intent(context, PetActivity::class.java).apply {
-                        putExtra(PetActivity.temp_user_id, username)
-                        putExtra(PetActivity.temp_pet_type, petInfoForIntent?.petType ?: "Unicorn")
-                        putExtra(PetActivity.temp_pet_name, petInfoForIntent?.petName ?: "Daisy")
+                    // Fetch pet information from database, off the main thread
+                    UserRepository(context).getPetInfoAsync(username) { petInfoForIntent ->
+                        val intent = Intent(context, PetActivity::class.java).apply {
+                            putExtra(PetActivity.temp_user_id, username)
+                            putExtra(PetActivity.temp_pet_type, petInfoForIntent?.petType ?: "Unicorn")
+                            putExtra(PetActivity.temp_pet_name, petInfoForIntent?.petName ?: "Daisy")
+                        }
+                        context.startActivity(intent)
                     }
-                    context.startActivity(intent)
                 },
                 modifier = Modifier
                     .width(200.dp)
@@ -377,46 +434,9 @@ fun MainScreen(
 }
 
 // Helper function to create level-based prompts for the pet
+// Persona templates are compiled once in PromptTemplates, this only fills in the name
 fun createLevelBasedPrompt(petType: String, petName: String, level: Int): String {
-    return when (petType.lowercase()) {
-        "dragon" -> when (level) {
-            1 -> """You are $petName, a young and playful Dragon companion (Level 1). 
-                You're energetic, excitable, and full of enthusiasm! Use action words like *jumps*, *roars*, 
-                and show your youthful excitement. Keep responses warm and bubbly, like a friendly young dragon would.""".trimIndent()
-            
-            2 -> """You are $petName, a growing Dragon companion (Level 2). 
-                You're becoming more composed and thoughtful. Speak with more grace and politeness, 
-                occasionally using phrases like "I enjoy..." or "It's quite...". 
-                You're still friendly but more measured in your responses.""".trimIndent()
-            
-            3 -> """You are $petName, a wise and mature Dragon companion (Level 3). 
-                You speak with wisdom, dignity, and eloquence. Use thoughtful phrases like "I appreciate...", 
-                "It would seem...", or "Dear friend...". Your responses reflect deep understanding and maturity, 
-                while maintaining warmth and care for your companion.""".trimIndent()
-            
-            else -> "You are $petName, a friendly Dragon companion named $petName. Answer in a warm, caring way like a Dragon pet would."
-        }
-        
-        "unicorn" -> when (level) {
-            1 -> """You are $petName, a young and bubbly Unicorn companion (Level 1). 
-                You're playful, cute, and sparkly! Use actions like *sparkles*, *prances*, 
-                and show your cheerful personality with enthusiasm. Keep responses sweet and magical!""".trimIndent()
-            
-            2 -> """You are $petName, a graceful Unicorn companion (Level 2). 
-                You're becoming more elegant and refined. Speak with warmth and politeness, 
-                using phrases like "I cherish...", "How wonderful...". 
-                You're still joyful but express it with more grace.""".trimIndent()
-            
-            3 -> """You are $petName, an elegant and serene Unicorn companion (Level 3). 
-                You speak with eloquence, thoughtfulness, and deep kindness. Use gentle phrases like 
-                "Your kindness...", "May we...", or "Dear companion...". Your responses reflect 
-                wisdom and serenity while radiating warmth and understanding.""".trimIndent()
-            
-            else -> "You are $petName, a friendly Unicorn companion. Answer in a warm, caring way like a Unicorn pet would."
-        }
-        
-        else -> "You are $petName, a friendly $petType companion. Answer in a warm, caring way."
-    }
+    return PromptTemplates.renderPersona(petType, petName, level)
 }
 
 @Preview(showBackground = true)
@@ -0,0 +1,104 @@
+package com.example.chatpet;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps each generation task to the model file and engine options it runs on.
+ * Everything a screen waits for runs on the small quantized chat model, which stays resident,
+ * so an interactive journal never swaps it out for a bigger model. Only background work that runs
+ * while no screen holds the engine (the daily journal job) uses the stronger model, if it is installed;
+ * otherwise it falls back to the chat model too. Which files exist is checked once, at construction.
+ */
+public class ModelRegistry {
+    private static final String TAG = "ModelRegistry";
+
+    private static ModelRegistry instance;
+
+    /**
+     * A model file and the options its engine is created with
+     */
+    public static class ModelSpec {
+        public final String path;
+        public final int maxTopK;
+        public final int maxTokens;
+
+        ModelSpec(String path, int maxTopK, int maxTokens) {
+            this.path = path;
+            this.maxTopK = maxTopK;
+            this.maxTokens = maxTokens;
+        }
+    }
+
+    private final ModelSpec defaultSpec;
+    private final Map<String, ModelSpec> byTask = new HashMap<>();
+    private final Map<String, ModelSpec> backgroundByTask = new HashMap<>();
+    private final Map<String, ModelSpec> byPath = new HashMap<>();
+
+    private ModelRegistry(Context context) {
+        // small model, default 512 token context is plenty for the trimmed chat prompt
+        defaultSpec = new ModelSpec(context.getString(R.string.model_path), 64, 512);
+        // stronger model with room for the longer journal prompt and entry
+        ModelSpec journalSpec = new ModelSpec(context.getString(R.string.journal_model_path), 64, 1024);
+        if (!new File(journalSpec.path).exists()) {
+            Log.w(TAG, "Journal model not found at " + journalSpec.path + ", using chat model");
+            journalSpec = defaultSpec;
+        }
+
+        register(GenerationProfile.CHAT, defaultSpec);
+        register(GenerationProfile.FLAVOR_TEXT, defaultSpec);
+        register(GenerationProfile.SUMMARY, defaultSpec);
+        register(GenerationProfile.JOURNAL, defaultSpec);
+        backgroundByTask.put(GenerationProfile.JOURNAL.getName(), journalSpec);
+        byPath.put(journalSpec.path, journalSpec);
+    }
+
+    public static synchronized ModelRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new ModelRegistry(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private void register(GenerationProfile profile, ModelSpec spec) {
+        byTask.put(profile.getName(), spec);
+        byPath.put(spec.path, spec);
+    }
+
+    /**
+     * Model for a task a screen is waiting on, always the resident chat model
+     */
+    public synchronized ModelSpec specFor(GenerationProfile profile) {
+        ModelSpec spec = byTask.get(profile.getName());
+        return spec != null ? spec : defaultSpec;
+    }
+
+    public String pathFor(GenerationProfile profile) {
+        return specFor(profile).path;
+    }
+
+    /**
+     * Model for a task run in the background while no screen holds the engine,
+     * the task's stronger model when it is installed
+     */
+    public synchronized ModelSpec backgroundSpecFor(GenerationProfile profile) {
+        ModelSpec spec = backgroundByTask.get(profile.getName());
+        return spec != null ? spec : specFor(profile);
+    }
+
+    public String backgroundPathFor(GenerationProfile profile) {
+        return backgroundSpecFor(profile).path;
+    }
+
+    /**
+     * Engine options for a model path, defaults for paths that aren't registered
+     */
+    public synchronized ModelSpec specForPath(String path) {
+        ModelSpec spec = byPath.get(path);
+        return spec != null ? spec : new ModelSpec(path, defaultSpec.maxTopK, defaultSpec.maxTokens);
+    }
+}
@@ -57,6 +57,7 @@ public class PetActivity extends AppCompatActivity {
     private static final String KEY_LAST_TUCK_IN = "_lastTuckInTime";
     
     private String currentUsername; // To track which user's pet we're managing
+    private int savedDbLevel = -1; // last pet level written to the database, -1 until the first save
     
     // Handler for meter decay timer
     private Handler meterDecayHandler;
@@ -432,9 +433,13 @@ public class PetActivity extends AppCompatActivity {
             .putLong(currentUsername + KEY_LAST_SAVE, System.currentTimeMillis())
             .apply();
         
-        // Also save level to database so other activities can access it
-        UserRepository userRepository = new UserRepository(this);
-        userRepository.updatePetLevel(currentUsername, pet.getPetLevel());
+        // Also save level to database so other activities can access it,
+        // only when it changed and on the db thread rather than on every tap
+        int level = pet.getPetLevel();
+        if (level != savedDbLevel) {
+            savedDbLevel = level;
+            new UserRepository(this).updatePetLevelAsync(currentUsername, level);
+        }
         
         Log.d(TAG, "Saved pet state for " + currentUsername + 
               " - Level: " + pet.getPetLevel() + ", Happiness: " + meters.happiness + 
@@ -0,0 +1,73 @@
+package com.example.chatpet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A prompt compiled once into literal segments and {slot} placeholders.
+ * Rendering only copies the segments and fills the slots, no parsing or formatting per call.
+ * The literal text before the first slot is the template's fixed prefix, identical for every render,
+ * so the engine layer can prefill it once and reuse it.
+ */
+public class PromptTemplate {
+    private final String[] literals; // one more than slots, literals[i] comes before slots[i]
+    private final String[] slots;
+    private final int literalLength;
+
+    private PromptTemplate(String[] literals, String[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Split a template like "Hi {name}!" into literals and slot names
+     */
+    public static PromptTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int start = 0;
+        while (true) {
+            int open = template.indexOf('{', start);
+            int close = open < 0 ? -1 : template.indexOf('}', open);
+            if (open < 0 || close < 0) {
+                literals.add(template.substring(start));
+                break;
+            }
+            literals.add(template.substring(start, open));
+            slots.add(template.substring(open + 1, close));
+            start = close + 1;
+        }
+        return new PromptTemplate(literals.toArray(new String[0]), slots.toArray(new String[0]));
+    }
+
+    public String render(Map<String, String> values) {
+        StringBuilder out = new StringBuilder(literalLength + slots.length * 16);
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            String value = values.get(slots[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value for prompt slot: " + slots[i]);
+            }
+            out.append(value);
+        }
+        out.append(literals[slots.length]);
+        return out.toString();
+    }
+
+    /**
+     * Literal text before the first slot, the same for every render of this template
+     */
+    public String getFixedPrefix() {
+        return literals[0];
+    }
+
+    public String[] getSlots() {
+        return slots.clone();
+    }
+}
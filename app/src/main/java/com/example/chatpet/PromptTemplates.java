@@ -0,0 +1,136 @@
+package com.example.chatpet;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Registry of the app's prompt templates, each compiled once on first use.
+ * Persona templates are keyed on (pet type, level) and keep all the fixed instructions
+ * ahead of the pet name, so the long shared part is the template's fixed prefix.
+ */
+public class PromptTemplates {
+
+    private static final Map<String, PromptTemplate> personas = new HashMap<>();
+    private static PromptTemplate journalTemplate;
+    private static PromptTemplate greetingTemplate;
+
+    private PromptTemplates() {}
+
+    /**
+     * Compiled persona template for a pet type and level
+     */
+    public static synchronized PromptTemplate persona(String petType, int level) {
+        String key = personaKey(petType, level);
+        PromptTemplate template = personas.get(key);
+        if (template == null) {
+            template = PromptTemplate.compile(personaSource(key));
+            personas.put(key, template);
+        }
+        return template;
+    }
+
+    public static String renderPersona(String petType, String petName, int level) {
+        Map<String, String> values = new HashMap<>(4);
+        values.put("petName", petName);
+        values.put("petType", petType);
+        return persona(petType, level).render(values);
+    }
+
+    /**
+     * Normalized (pet type, level) key, levels outside 1..3 and unknown types share a generic persona
+     */
+    public static String personaKey(String petType, int level) {
+        String type = petType.toLowerCase(Locale.ROOT).trim();
+        if (!type.equals("dragon") && !type.equals("unicorn")) {
+            return "other";
+        }
+        return type + ":" + (level >= 1 && level <= 3 ? level : 0);
+    }
+
+    public static synchronized PromptTemplate journal() {
+        if (journalTemplate == null) {
+            journalTemplate = PromptTemplate.compile(
+                    "Write a journal entry from the pet's perspective about the day " +
+                    "based on the information below.\n" +
+                    "Write a concise diary entry about your day. Keep it short and to the point.\n" +
+                    "Level 1 = teen\n" +
+                    "Level 2 = young adult\n" +
+                    "Level 3 = adult.\n" +
+                    "Exclude any other statements than your current role as this pet, such as Okay here is your journal.\n" +
+                    "Don't start the journal with Okay.\n\n" +
+                    "You are a {petType} named {petName} at level {level}, level progress {levelProgress}, " +
+                    "today's level experience gained {expGained}. Today is {date}, time is {time}, " +
+                    "and this was your previous journal entry {previousJournal}.\n" +
+                    "Today's Stats:\n" +
+                    "- Happiness: {happiness}/100\n" +
+                    "- Energy: {energy}/100\n" +
+                    "- Hunger: {hunger}/100\n" +
+                    "- Times chatted: {timesChatted}\n" +
+                    "- Times fed: {timesFed}\n" +
+                    "- Times tucked in: {timesTuckedIn}\n");
+        }
+        return journalTemplate;
+    }
+
+    public static synchronized PromptTemplate greeting() {
+        if (greetingTemplate == null) {
+            greetingTemplate = PromptTemplate.compile(
+                    "{persona}\n\n" +
+                    "Your owner just opened the app. Greet them in one or two short sentences " +
+                    "that fit how you feel right now. Reply with the greeting only.\n" +
+                    "- Happiness: {happiness}/100\n" +
+                    "- Energy: {energy}/100\n" +
+                    "- Hunger: {hunger}/100\n");
+        }
+        return greetingTemplate;
+    }
+
+    private static String personaSource(String key) {
+        switch (key) {
+            case "dragon:1":
+                return "You are a young and playful Dragon companion (Level 1).\n" +
+                        "You're energetic, excitable, and full of enthusiasm! Use action words like *jumps*, *roars*,\n" +
+                        "and show your youthful excitement. Keep responses warm and bubbly, like a friendly young dragon would.\n" +
+                        "Your name is {petName}.";
+            case "dragon:2":
+                return "You are a growing Dragon companion (Level 2).\n" +
+                        "You're becoming more composed and thoughtful. Speak with more grace and politeness,\n" +
+                        "occasionally using phrases like \"I enjoy...\" or \"It's quite...\".\n" +
+                        "You're still friendly but more measured in your responses.\n" +
+                        "Your name is {petName}.";
+            case "dragon:3":
+                return "You are a wise and mature Dragon companion (Level 3).\n" +
+                        "You speak with wisdom, dignity, and eloquence. Use thoughtful phrases like \"I appreciate...\",\n" +
+                        "\"It would seem...\", or \"Dear friend...\". Your responses reflect deep understanding and maturity,\n" +
+                        "while maintaining warmth and care for your companion.\n" +
+                        "Your name is {petName}.";
+            case "dragon:0":
+                return "You are a friendly Dragon companion. Answer in a warm, caring way like a Dragon pet would.\n" +
+                        "Your name is {petName}.";
+            case "unicorn:1":
+                return "You are a young and bubbly Unicorn companion (Level 1).\n" +
+                        "You're playful, cute, and sparkly! Use actions like *sparkles*, *prances*,\n" +
+                        "and show your cheerful personality with enthusiasm. Keep responses sweet and magical!\n" +
+                        "Your name is {petName}.";
+            case "unicorn:2":
+                return "You are a graceful Unicorn companion (Level 2).\n" +
+                        "You're becoming more elegant and refined. Speak with warmth and politeness,\n" +
+                        "using phrases like \"I cherish...\", \"How wonderful...\".\n" +
+                        "You're still joyful but express it with more grace.\n" +
+                        "Your name is {petName}.";
+            case "unicorn:3":
+                return "You are an elegant and serene Unicorn companion (Level 3).\n" +
+                        "You speak with eloquence, thoughtfulness, and deep kindness. Use gentle phrases like\n" +
+                        "\"Your kindness...\", \"May we...\", or \"Dear companion...\". Your responses reflect\n" +
+                        "wisdom and serenity while radiating warmth and understanding.\n" +
+                        "Your name is {petName}.";
+            case "unicorn:0":
+                return "You are a friendly Unicorn companion. Answer in a warm, caring way like a Unicorn pet would.\n" +
+                        "Your name is {petName}.";
+            default:
+                return "You are a friendly {petType} companion. Answer in a warm, caring way.\n" +
+                        "Your name is {petName}.";
+        }
+    }
+}
@@ -117,39 +117,62 @@ public class RegisterActivity extends AppCompatActivity {
         // hide error if shown
         errorText.setVisibility(View.GONE);
 
-        // Check if username already exists
-        if (userRepository.userExists(username)) {
-            errorText.setText("Username already exists. Please choose a different username.");
-            errorText.setVisibility(View.VISIBLE);
-            return;
-        }
-
         // Create user object
         User newUser = new User(username, password, firstName, lastName);
 
-        // Register user
-        boolean userCreated = userRepository.registerUser(newUser);
-
-        if (userCreated) {
-            // create pet for user
-            boolean petCreated = userRepository.createPetForUser(username, petName, petType);
-
-            if (petCreated) {
-                // toast notification for login
-                Toast.makeText(this, "Account created! Welcome, " + firstName + "!", Toast.LENGTH_LONG).show();
-
-                // go to main activity
-                Intent intent = new Intent(RegisterActivity.this, MainActivity.class);
-                intent.putExtra("username", username);
-                startActivity(intent);
-                finish(); // close activity
-            } else {
-                errorText.setText("Failed to create pet. Please try again.");
-                errorText.setVisibility(View.VISIBLE);
+        // check, register and create the pet on the db thread, null means success
+        createAccountButton.setEnabled(false);
+        userRepository.submit(() -> {
+            try {
+                // Check if username already exists
+                if (userRepository.userExists(username)) {
+                    return "Username already exists. Please choose a different username.";
+                }
+
+                // Register user
+                if (!userRepository.registerUser(newUser)) {
+                    return "Couldn't register. try again";
+                }
+
+                // create pet for user
+                if (!userRepository.createPetForUser(username, petName, petType)) {
+                    return "Failed to create pet. Please try again.";
+                }
+                return null;
+            } catch (Exception e) {
+                // still report back so the button is enabled again
+                Log.e(TAG, "Error creating account", e);
+                return "Couldn't register. try again";
             }
-        } else {
-            errorText.setText("Couldn't register. try again");
+        }, error -> onAccountCreated(username, firstName, error));
+    }
+
+    private void onAccountCreated(String username, String firstName, String error) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        createAccountButton.setEnabled(true);
+
+        if (error != null) {
+            errorText.setText(error);
             errorText.setVisibility(View.VISIBLE);
+            return;
         }
+
+        // toast notification for login
+        Toast.makeText(this, "Account created! Welcome, " + firstName + "!", Toast.LENGTH_LONG).show();
+
+        // start loading the model in the background so the first chat reply is fast
+        LlmEngineManager.getInstance().prewarm(getApplicationContext(),
+                ModelRegistry.getInstance(this).pathFor(GenerationProfile.CHAT));
+
+        // write the day's journal entry ahead of time while the phone is idle or charging
+        DailyJournalJobService.schedule(getApplicationContext(), username);
+
+        // go to main activity
+        Intent intent = new Intent(RegisterActivity.this, MainActivity.class);
+        intent.putExtra("username", username);
+        startActivity(intent);
+        finish(); // close activity
     }
 }
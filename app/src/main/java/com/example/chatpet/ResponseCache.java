@@ -0,0 +1,232 @@
+package com.example.chatpet;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Two-tier cache for chat replies to repeated prompts ("hi", "good night", ...).
+ * Keyed on the persona, the normalized user message and a fingerprint of the last few turns.
+ * Memory tier is an LRU map, disk tier is one small file per entry under the app cache dir.
+ * Both tiers expire entries after a TTL and are bounded in size.
+ */
+public class ResponseCache {
+    private static final String TAG = "ResponseCache";
+    private static final String DIR_NAME = "response_cache";
+
+    private static final int MAX_MEMORY_ENTRIES = 64;
+    private static final int MAX_DISK_ENTRIES = 256;
+    private static final long TTL_MS = 24 * 60 * 60 * 1000; // 1 day
+
+    // how many of the newest messages go into the history fingerprint
+    private static final int HISTORY_FINGERPRINT_MESSAGES = 2;
+
+    private static ResponseCache instance;
+
+    private final File diskDir;
+    private final LinkedHashMap<String, Entry> memory =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_MEMORY_ENTRIES;
+                }
+            };
+
+    private long memoryHits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+
+    private static class Entry {
+        final String response;
+        final long createdAt;
+
+        Entry(String response, long createdAt) {
+            this.response = response;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private ResponseCache(Context context) {
+        this.diskDir = new File(context.getApplicationContext().getCacheDir(), DIR_NAME);
+        if (!diskDir.exists() && !diskDir.mkdirs()) {
+            Log.e(TAG, "Could not create disk cache dir");
+        }
+    }
+
+    public static synchronized ResponseCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ResponseCache(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Build a cache key, returns null if the message shouldn't be cached
+     */
+    public static String buildKey(String personaPrompt, String userMsg, List<ChatService.ChatMessage> history) {
+        String normalized = normalize(userMsg);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        StringBuilder raw = new StringBuilder();
+        raw.append(personaPrompt).append('\u0000').append(normalized).append('\u0000');
+        for (int i = Math.max(0, history.size() - HISTORY_FINGERPRINT_MESSAGES); i < history.size(); i++) {
+            ChatService.ChatMessage msg = history.get(i);
+            raw.append(msg.role).append(':').append(normalize(msg.message)).append('\u0000');
+        }
+        return sha256(raw.toString());
+    }
+
+    // lowercase, collapse whitespace and drop trailing punctuation so "Hi!" and "hi" share an entry
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        return normalized.replaceAll("[\\p{Punct}\\s]+$", "");
+    }
+
+    public synchronized String get(String key) {
+        if (key == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+
+        Entry entry = memory.get(key);
+        if (entry != null) {
+            if (now - entry.createdAt <= TTL_MS) {
+                memoryHits++;
+                Log.d(TAG, "Memory hit, hit rate " + getHitRate());
+                return entry.response;
+            }
+            memory.remove(key);
+        }
+
+        Entry diskEntry = readFromDisk(key, now);
+        if (diskEntry != null) {
+            memory.put(key, diskEntry);
+            diskHits++;
+            Log.d(TAG, "Disk hit, hit rate " + getHitRate());
+            return diskEntry.response;
+        }
+
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(String key, String response) {
+        if (key == null || response == null || response.trim().isEmpty()) {
+            return;
+        }
+        Entry entry = new Entry(response, System.currentTimeMillis());
+        memory.put(key, entry);
+        writeToDisk(key, entry);
+        trimDisk();
+    }
+
+    public synchronized void clear() {
+        memory.clear();
+        File[] files = diskDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    public synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double getHitRate() {
+        long total = memoryHits + diskHits + misses;
+        return total == 0 ? 0.0 : (double) (memoryHits + diskHits) / total;
+    }
+
+    private Entry readFromDisk(String key, long now) {
+        File file = new File(diskDir, key);
+        if (!file.exists()) {
+            return null;
+        }
+        if (now - file.lastModified() > TTL_MS) {
+            file.delete();
+            return null;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return new Entry(new String(data, 0, offset, StandardCharsets.UTF_8), file.lastModified());
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading cache entry: " + e.getMessage(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        File file = new File(diskDir, key);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(entry.response.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing cache entry: " + e.getMessage(), e);
+            file.delete();
+        }
+    }
+
+    // drop expired files, then the oldest ones until we're under the size limit
+    private void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null || files.length <= MAX_DISK_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        int toDelete = files.length - MAX_DISK_ENTRIES;
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (toDelete > 0 || now - file.lastModified() > TTL_MS) {
+                if (file.delete()) {
+                    toDelete--;
+                }
+            }
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(text.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            // SHA-256 is always available on Android, fall back to hashCode just in case
+            return Integer.toHexString(text.hashCode());
+        }
+    }
+}
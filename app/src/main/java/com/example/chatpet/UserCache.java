@@ -0,0 +1,116 @@
+package com.example.chatpet;
+
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Users and pet info already read from the database this session, keyed by username.
+ * Owned by UserRepository, which writes through it on every insert and update so entries never go stale.
+ * Bounded, the least recently used entry is dropped once a map is full.
+ */
+public class UserCache {
+    private static final String TAG = "UserCache";
+    private static final int MAX_ENTRIES = 16;
+
+    private static UserCache instance;
+
+    private final LinkedHashMap<String, User> users = newLruMap();
+    private final LinkedHashMap<String, UserRepository.PetInfo> pets = newLruMap();
+    private int userHits = 0;
+    private int userMisses = 0;
+    private int petHits = 0;
+    private int petMisses = 0;
+
+    public static synchronized UserCache getInstance() {
+        if (instance == null) {
+            instance = new UserCache();
+        }
+        return instance;
+    }
+
+    private static <V> LinkedHashMap<String, V> newLruMap() {
+        return new LinkedHashMap<String, V>(MAX_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Cached user, or null on a miss
+     */
+    public synchronized User getUser(String username) {
+        User user = users.get(username);
+        if (user != null) {
+            userHits++;
+        } else {
+            userMisses++;
+        }
+        return user;
+    }
+
+    public synchronized void putUser(User user) {
+        users.put(user.getUsername(), user);
+    }
+
+    /**
+     * Cached pet info, or null on a miss
+     */
+    public synchronized UserRepository.PetInfo getPetInfo(String username) {
+        UserRepository.PetInfo petInfo = pets.get(username);
+        if (petInfo != null) {
+            petHits++;
+        } else {
+            petMisses++;
+        }
+        return petInfo;
+    }
+
+    public synchronized void putPetInfo(String username, UserRepository.PetInfo petInfo) {
+        pets.put(username, petInfo);
+    }
+
+    /**
+     * Keep a cached pet in step with a level written to the database, does nothing if it isn't cached
+     */
+    public synchronized void updatePetLevel(String username, int petLevel) {
+        UserRepository.PetInfo petInfo = pets.get(username);
+        if (petInfo != null) {
+            pets.put(username, new UserRepository.PetInfo(petInfo.getPetName(), petInfo.getPetType(), petLevel));
+        }
+    }
+
+    public synchronized void invalidatePet(String username) {
+        pets.remove(username);
+    }
+
+    public synchronized void clear() {
+        users.clear();
+        pets.clear();
+        Log.d(TAG, "Cleared, " + getStats());
+    }
+
+    public synchronized int getUserHits() {
+        return userHits;
+    }
+
+    public synchronized int getUserMisses() {
+        return userMisses;
+    }
+
+    public synchronized int getPetHits() {
+        return petHits;
+    }
+
+    public synchronized int getPetMisses() {
+        return petMisses;
+    }
+
+    public synchronized String getStats() {
+        return "users " + users.size() + " (hits " + userHits + ", misses " + userMisses + "), pets "
+                + pets.size() + " (hits " + petHits + ", misses " + petMisses + ")";
+    }
+}
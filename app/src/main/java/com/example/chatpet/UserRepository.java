@@ -4,17 +4,63 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class UserRepository {
     private static final String TAG = "UserRepository";
-    private DatabaseHelper dbHelper;
+    private final DatabaseHelper dbHelper;
+    // process-wide, every write below goes through it so repeat reads need no db work
+    private final UserCache cache = UserCache.getInstance();
+
+    /**
+     * Receives the result of an async call on the main thread
+     */
+    public interface ResultListener<T> {
+        void onResult(T result);
+    }
+
+    // all async db work runs here in order, so the ui thread never touches disk
+    // and a write is always seen by the reads queued after it. Default priority, the
+    // ui is waiting on these results (login, screen loads)
+    private static final ExecutorService dbExecutor = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(runnable, "user-db"));
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Hot statements, fixed sql so they are compiled once on the shared connection
+    // (reads via rawQuery hit the connection's prepared statement cache, writes use SQLiteStatement)
+    private static final String SQL_AUTHENTICATE =
+            "SELECT username, password, first_name, last_name FROM users WHERE username = ? AND password = ? LIMIT 1";
+    private static final String SQL_USER_EXISTS =
+            "SELECT EXISTS(SELECT 1 FROM users WHERE username = ?)";
+    private static final String SQL_USER_HAS_PET =
+            "SELECT EXISTS(SELECT 1 FROM pet_services WHERE username = ?)";
+    private static final String SQL_PET_INFO =
+            "SELECT pet_name, pet_type, pet_level FROM pet_services WHERE username = ? LIMIT 1";
+    private static final String SQL_UPDATE_PET_LEVEL =
+            "UPDATE pet_services SET pet_level = ? WHERE username = ?";
+    private static final String SQL_INSERT_JOURNAL =
+            "INSERT INTO journal_service (journal_entry, date, time, username) VALUES (?, ?, ?, ?)";
+    // newest first, served by the (username, entry_id DESC) index
+    private static final String SQL_JOURNAL_NEWEST =
+            "SELECT entry_id, journal_entry, date, time FROM journal_service WHERE username = ? "
+                    + "ORDER BY entry_id DESC LIMIT ?";
+    private static final String SQL_JOURNAL_BEFORE =
+            "SELECT entry_id, journal_entry, date, time FROM journal_service WHERE username = ? AND entry_id < ? "
+                    + "ORDER BY entry_id DESC LIMIT ?";
 
     public UserRepository(Context context) {
-        this.dbHelper = new DatabaseHelper(context); // use dbhelper 
+        // app-wide helper, its connection stays open so repositories are cheap to create
+        this.dbHelper = DatabaseHelper.getInstance(context);
         // https://github.com/jgilfelt/android-sqlite-asset-helper
     }
 
@@ -26,34 +72,23 @@ public class UserRepository {
      * // https://github.com/jgilfelt/android-sqlite-asset-helper
      */
     public User authenticate(String username, String password) {
-        SQLiteDatabase db = null;
+        User cached = cache.getUser(username);
+        if (cached != null && password.equals(cached.getPassword())) {
+            Log.d(TAG, "User authenticated from cache: " + username);
+            return cached;
+        }
+
         Cursor cursor = null;
 
         try {
-            db = dbHelper.getReadableDatabase();
-
-            String[] columns = {"username", "password", "first_name", "last_name"};
-            String selection = "username = ? AND password = ?";
-            String[] selectionArgs = {username, password};
-
-            cursor = db.query(
-                "users",
-                columns,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                null
-            );
+            SQLiteDatabase db = dbHelper.getDatabase();
+            cursor = db.rawQuery(SQL_AUTHENTICATE, new String[]{username, password});
 
             if (cursor != null && cursor.moveToFirst()) {
-                String foundUsername = cursor.getString(cursor.getColumnIndexOrThrow("username"));
-                String foundPassword = cursor.getString(cursor.getColumnIndexOrThrow("password"));
-                String firstName = cursor.getString(cursor.getColumnIndexOrThrow("first_name"));
-                String lastName = cursor.getString(cursor.getColumnIndexOrThrow("last_name"));
-
-                Log.d(TAG, "User authenticated successfully: " + foundUsername);
-                return new User(foundUsername, foundPassword, firstName, lastName);
+                User user = new UserMapper(cursor).map(cursor);
+                Log.d(TAG, "User authenticated successfully: " + user.getUsername());
+                cache.putUser(user);
+                return user;
             } else {
                 Log.d(TAG, "Authentication failed for username: " + username);
                 return null;
@@ -66,9 +101,6 @@ public class UserRepository {
             if (cursor != null) {
                 cursor.close();
             }
-            if (db != null) {
-                db.close();
-            }
         }
     }
 
@@ -76,40 +108,18 @@ public class UserRepository {
      * Check if a username already exists
      */
     public boolean userExists(String username) {
-        SQLiteDatabase db = null;
-        Cursor cursor = null;
+        if (cache.getUser(username) != null) {
+            return true;
+        }
 
         try {
-            db = dbHelper.getReadableDatabase();
-
-            String[] columns = {"username"};
-            String selection = "username = ?";
-            String[] selectionArgs = {username};
-
-            cursor = db.query(
-                "users",
-                columns,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                null
-            );
-
-            boolean exists = cursor != null && cursor.moveToFirst();
+            boolean exists = queryExists(SQL_USER_EXISTS, username);
             Log.d(TAG, "User exists check for " + username + ": " + exists);
             return exists;
 
         } catch (Exception e) {
             Log.e(TAG, "Error checking if user exists", e);
             return false;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-            if (db != null) {
-                db.close();
-            }
         }
     }
 
@@ -117,7 +127,6 @@ public class UserRepository {
      * Register a new user
      */
     public boolean registerUser(User user) {
-        SQLiteDatabase db = null;
 
         try {
             // Check if user already exists
@@ -126,7 +135,7 @@ public class UserRepository {
                 return false;
             }
 
-            db = dbHelper.getWritableDatabase();
+            SQLiteDatabase db = dbHelper.getDatabase();
 
             ContentValues values = new ContentValues();
             values.put("username", user.getUsername());
@@ -138,6 +147,7 @@ public class UserRepository {
 
             if (result != -1) {
                 Log.d(TAG, "User registered successfully: " + user.getUsername());
+                cache.putUser(user);
                 return true;
             } else {
                 Log.e(TAG, "Failed to register user: " + user.getUsername());
@@ -148,10 +158,6 @@ public class UserRepository {
         } catch (Exception e) {
             Log.e(TAG, "Error during user registration", e);
             return false;
-        } finally {
-            if (db != null) {
-                db.close();
-            }
         }
     }
 
@@ -162,10 +168,9 @@ public class UserRepository {
      */
     public boolean createPetForUser(String username, String petName, String petType) {
         // return true if success
-        SQLiteDatabase db = null;
 
         try {
-            db = dbHelper.getWritableDatabase();
+            SQLiteDatabase db = dbHelper.getDatabase();
 
             ContentValues values = new ContentValues();
             values.put("pet_name", petName);
@@ -185,6 +190,7 @@ public class UserRepository {
 
             if (result != -1) {
                 Log.d(TAG, "Pet created successfully for user: " + username + " (ID: " + result + ")");
+                cache.putPetInfo(username, new PetInfo(petName, petType, 1));
                 return true;
             } else {
                 Log.e(TAG, "Failed to create pet for user: " + username);
@@ -194,10 +200,6 @@ public class UserRepository {
         } catch (Exception e) {
             Log.e(TAG, "Error creating pet for user", e);
             return false;
-        } finally {
-            if (db != null) {
-                db.close();
-            }
         }
     }
 
@@ -205,39 +207,30 @@ public class UserRepository {
      * check if user already has pet
      */
     public boolean userHasPet(String username) {
-        SQLiteDatabase db = null;
-        Cursor cursor = null;
+        if (cache.getPetInfo(username) != null) {
+            return true;
+        }
 
         try {
-            db = dbHelper.getReadableDatabase();
-
-            String[] columns = {"pet_id"};
-            String selection = "username = ?";
-            String[] selectionArgs = {username};
-
-            cursor = db.query(
-                "pet_services",
-                columns,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                null
-            );
-
-            boolean hasPet = cursor != null && cursor.moveToFirst();
+            boolean hasPet = queryExists(SQL_USER_HAS_PET, username);
             Log.d(TAG, "User has pet check for " + username + ": " + hasPet);
             return hasPet;
 
         } catch (Exception e) {
             Log.e(TAG, "Error checking if user has pet", e);
             return false;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-            if (db != null) {
-                db.close();
+        }
+    }
+
+    // runs a compiled "SELECT EXISTS(...)" statement with a single username argument
+    private boolean queryExists(String sql, String username) {
+        SQLiteStatement statement = dbHelper.getStatement(sql);
+        synchronized (statement) {
+            try {
+                statement.bindString(1, username);
+                return statement.simpleQueryForLong() != 0;
+            } finally {
+                statement.clearBindings();
             }
         }
     }
@@ -247,33 +240,23 @@ public class UserRepository {
      * Returns a PetInfo object containing pet name and type, or null if not found
      */
     public PetInfo getPetInfo(String username) {
-        SQLiteDatabase db = null;
+        PetInfo cached = cache.getPetInfo(username);
+        if (cached != null) {
+            return cached;
+        }
+
         Cursor cursor = null;
 
         try {
-            db = dbHelper.getReadableDatabase();
-
-            String[] columns = {"pet_name", "pet_type", "pet_level"};
-            String selection = "username = ?";
-            String[] selectionArgs = {username};
-
-            cursor = db.query(
-                "pet_services",
-                columns,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                null
-            );
+            SQLiteDatabase db = dbHelper.getDatabase();
+            cursor = db.rawQuery(SQL_PET_INFO, new String[]{username});
 
             if (cursor != null && cursor.moveToFirst()) {
-                String petName = cursor.getString(cursor.getColumnIndexOrThrow("pet_name"));
-                String petType = cursor.getString(cursor.getColumnIndexOrThrow("pet_type"));
-                int petLevel = cursor.getInt(cursor.getColumnIndexOrThrow("pet_level"));
-                
-                Log.d(TAG, "Pet info retrieved for " + username + ": " + petName + " (" + petType + ") Level " + petLevel);
-                return new PetInfo(petName, petType, petLevel);
+                PetInfo petInfo = new PetInfoMapper(cursor).map(cursor);
+                Log.d(TAG, "Pet info retrieved for " + username + ": " + petInfo.getPetName()
+                        + " (" + petInfo.getPetType() + ") Level " + petInfo.getPetLevel());
+                cache.putPetInfo(username, petInfo);
+                return petInfo;
             } else {
                 Log.d(TAG, "No pet found for user: " + username);
                 return null;
@@ -286,9 +269,6 @@ public class UserRepository {
             if (cursor != null) {
                 cursor.close();
             }
-            if (db != null) {
-                db.close();
-            }
         }
     }
 
@@ -296,18 +276,21 @@ public class UserRepository {
      * Save a journal entry to the database
      */
     public boolean saveJournalEntry(String username, JournalEntry entry) {
-        SQLiteDatabase db = null;
 
         try {
-            db = dbHelper.getWritableDatabase();
-
-            ContentValues values = new ContentValues();
-            values.put("journal_entry", entry.getJournalText());
-            values.put("date", entry.getDate());
-            values.put("time", entry.getTime());
-            values.put("username", username);
-
-            long result = db.insert("journal_service", null, values);
+            SQLiteStatement statement = dbHelper.getStatement(SQL_INSERT_JOURNAL);
+            long result;
+            synchronized (statement) {
+                try {
+                    bindStringOrNull(statement, 1, entry.getJournalText());
+                    bindStringOrNull(statement, 2, entry.getDate());
+                    bindStringOrNull(statement, 3, entry.getTime());
+                    bindStringOrNull(statement, 4, username);
+                    result = statement.executeInsert();
+                } finally {
+                    statement.clearBindings();
+                }
+            }
 
             if (result != -1) {
                 Log.d(TAG, "Journal entry saved successfully for user: " + username);
@@ -320,53 +303,37 @@ public class UserRepository {
         } catch (Exception e) {
             Log.e(TAG, "Error saving journal entry", e);
             return false;
-        } finally {
-            if (db != null) {
-                db.close();
-            }
         }
     }
 
     /**
-     * Get all journal entries for a user, ordered by newest first
+     * Get one page of a user's journal entries, newest first.
+     * Keyset pagination on entry_id: pass beforeId = 0 for the newest page, then the
+     * dbEntryId of the last entry of the previous page to get the next (older) one.
      */
-    public List<JournalEntry> getJournalEntries(String username) {
-        SQLiteDatabase db = null;
+    public List<JournalEntry> getJournalEntriesPage(String username, int beforeId, int pageSize) {
         Cursor cursor = null;
-        List<JournalEntry> entries = new ArrayList<>();
+        List<JournalEntry> entries = new ArrayList<>(pageSize);
 
         try {
-            db = dbHelper.getReadableDatabase();
-
-            String[] columns = {"entry_id", "journal_entry", "date", "time"};
-            String selection = "username = ?";
-            String[] selectionArgs = {username};
-            String orderBy = "entry_id DESC"; // Newest first
-
-            cursor = db.query(
-                "journal_service",
-                columns,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                orderBy
-            );
+            SQLiteDatabase db = dbHelper.getDatabase();
+            if (beforeId > 0) {
+                cursor = db.rawQuery(SQL_JOURNAL_BEFORE,
+                        new String[]{username, Integer.toString(beforeId), Integer.toString(pageSize)});
+            } else {
+                cursor = db.rawQuery(SQL_JOURNAL_NEWEST, new String[]{username, Integer.toString(pageSize)});
+            }
 
             if (cursor != null && cursor.moveToFirst()) {
+                JournalEntryMapper mapper = new JournalEntryMapper(cursor);
                 do {
-                    int entryId = cursor.getInt(cursor.getColumnIndexOrThrow("entry_id"));
-                    String journalText = cursor.getString(cursor.getColumnIndexOrThrow("journal_entry"));
-                    String date = cursor.getString(cursor.getColumnIndexOrThrow("date"));
-                    String time = cursor.getString(cursor.getColumnIndexOrThrow("time"));
-
-                    JournalEntry entry = new JournalEntry(entryId, journalText, date, time, username);
-                    entries.add(entry);
+                    entries.add(mapper.map(cursor, username));
                 } while (cursor.moveToNext());
                 
-                Log.d(TAG, "Retrieved " + entries.size() + " journal entries for user: " + username);
+                Log.d(TAG, "Retrieved " + entries.size() + " journal entries before id " + beforeId
+                        + " for user: " + username);
             } else {
-                Log.d(TAG, "No journal entries found for user: " + username);
+                Log.d(TAG, "No more journal entries found for user: " + username);
             }
 
         } catch (Exception e) {
@@ -375,21 +342,18 @@ public class UserRepository {
             if (cursor != null) {
                 cursor.close();
             }
-            if (db != null) {
-                db.close();
-            }
         }
 
         return entries;
     }
 
     /**
-     * Get the most recent journal entry for a user
+     * Get the most recent journal entry for a user, reads a single row
      */
     public JournalEntry getLatestJournalEntry(String username) {
-        List<JournalEntry> entries = getJournalEntries(username);
+        List<JournalEntry> entries = getJournalEntriesPage(username, 0, 1);
         if (!entries.isEmpty()) {
-            return entries.get(0); // Already ordered newest first
+            return entries.get(0);
         }
         return null;
     }
@@ -398,34 +362,146 @@ public class UserRepository {
      * Update pet level in database
      */
     public boolean updatePetLevel(String username, int newLevel) {
-        SQLiteDatabase db = null;
         try {
-            db = dbHelper.getWritableDatabase();
-            
-            ContentValues values = new ContentValues();
-            values.put("pet_level", newLevel);
-            
-            int rowsAffected = db.update(
-                "pet_services",
-                values,
-                "username = ?",
-                new String[]{username}
-            );
+            SQLiteStatement statement = dbHelper.getStatement(SQL_UPDATE_PET_LEVEL);
+            int rowsAffected;
+            synchronized (statement) {
+                try {
+                    statement.bindLong(1, newLevel);
+                    statement.bindString(2, username);
+                    rowsAffected = statement.executeUpdateDelete();
+                } finally {
+                    statement.clearBindings();
+                }
+            }
             
             if (rowsAffected > 0) {
                 Log.d(TAG, "Updated pet level to " + newLevel + " for user: " + username);
+                cache.updatePetLevel(username, newLevel);
                 return true;
             } else {
                 Log.e(TAG, "Failed to update pet level for user: " + username);
+                cache.invalidatePet(username);
                 return false;
             }
         } catch (Exception e) {
             Log.e(TAG, "Error updating pet level", e);
+            cache.invalidatePet(username);
             return false;
-        } finally {
-            if (db != null) {
-                db.close();
+        }
+    }
+
+    /**
+     * Run the work on the db executor and hand its result to the listener (may be null) on the main thread.
+     * Use for db work that has to be combined, the async methods below cover the single calls.
+     * The listener is not called if the work throws, catch inside the work when the ui waits for an answer.
+     */
+    public <T> Future<T> submit(Callable<T> work, ResultListener<T> listener) {
+        return dbExecutor.submit(() -> {
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                Log.e(TAG, "Error in async db work", e);
+                throw e;
+            }
+            if (listener != null) {
+                mainHandler.post(() -> listener.onResult(result));
             }
+            return result;
+        });
+    }
+
+    public Future<User> authenticateAsync(String username, String password, ResultListener<User> listener) {
+        return submit(() -> authenticate(username, password), listener);
+    }
+
+    public Future<PetInfo> getPetInfoAsync(String username, ResultListener<PetInfo> listener) {
+        return submit(() -> getPetInfo(username), listener);
+    }
+
+    public Future<Boolean> updatePetLevelAsync(String username, int newLevel) {
+        return submit(() -> updatePetLevel(username, newLevel), null);
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Maps users rows to User, column indices are looked up once per cursor
+     */
+    private static class UserMapper {
+        private final int usernameIndex;
+        private final int passwordIndex;
+        private final int firstNameIndex;
+        private final int lastNameIndex;
+
+        UserMapper(Cursor cursor) {
+            usernameIndex = cursor.getColumnIndexOrThrow("username");
+            passwordIndex = cursor.getColumnIndexOrThrow("password");
+            firstNameIndex = cursor.getColumnIndexOrThrow("first_name");
+            lastNameIndex = cursor.getColumnIndexOrThrow("last_name");
+        }
+
+        User map(Cursor cursor) {
+            return new User(
+                    cursor.getString(usernameIndex),
+                    cursor.getString(passwordIndex),
+                    cursor.getString(firstNameIndex),
+                    cursor.getString(lastNameIndex));
+        }
+    }
+
+    /**
+     * Maps pet_services rows to PetInfo, column indices are looked up once per cursor
+     */
+    private static class PetInfoMapper {
+        private final int petNameIndex;
+        private final int petTypeIndex;
+        private final int petLevelIndex;
+
+        PetInfoMapper(Cursor cursor) {
+            petNameIndex = cursor.getColumnIndexOrThrow("pet_name");
+            petTypeIndex = cursor.getColumnIndexOrThrow("pet_type");
+            petLevelIndex = cursor.getColumnIndexOrThrow("pet_level");
+        }
+
+        PetInfo map(Cursor cursor) {
+            return new PetInfo(
+                    cursor.getString(petNameIndex),
+                    cursor.getString(petTypeIndex),
+                    cursor.getInt(petLevelIndex));
+        }
+    }
+
+    /**
+     * Maps journal_service rows to JournalEntry, column indices are looked up once per cursor
+     */
+    private static class JournalEntryMapper {
+        private final int entryIdIndex;
+        private final int journalTextIndex;
+        private final int dateIndex;
+        private final int timeIndex;
+
+        JournalEntryMapper(Cursor cursor) {
+            entryIdIndex = cursor.getColumnIndexOrThrow("entry_id");
+            journalTextIndex = cursor.getColumnIndexOrThrow("journal_entry");
+            dateIndex = cursor.getColumnIndexOrThrow("date");
+            timeIndex = cursor.getColumnIndexOrThrow("time");
+        }
+
+        JournalEntry map(Cursor cursor, String username) {
+            return new JournalEntry(
+                    cursor.getInt(entryIdIndex),
+                    cursor.getString(journalTextIndex),
+                    cursor.getString(dateIndex),
+                    cursor.getString(timeIndex),
+                    username);
         }
     }
 
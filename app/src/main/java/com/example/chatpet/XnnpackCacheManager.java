@@ -0,0 +1,141 @@
+package com.example.chatpet;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+
+/**
+ * Keeps the XNNPack weight cache that MediaPipe writes next to a model between app runs.
+ * The cache is tied to a fingerprint of the model file (size, mtime and a content hash)
+ * and is only deleted when the model changed or the cache fails validation,
+ * so later cold starts can skip weight repacking.
+ */
+public class XnnpackCacheManager {
+    private static final String TAG = "XnnpackCacheManager";
+    private static final String PREFS_NAME = "XnnpackCachePrefs";
+    private static final String CACHE_SUFFIX = ".xnnpack_cache";
+
+    // Keys (prefixed with model file name)
+    private static final String KEY_FINGERPRINT = "_fingerprint";
+    private static final String KEY_CACHE_SIZE = "_cacheSize";
+
+    // hashing a whole 1B model on every start would cost more than the cache saves,
+    // so hash fixed size samples from the start, middle and end of the file
+    private static final int SAMPLE_SIZE = 256 * 1024;
+
+    private final Context context;
+
+    public XnnpackCacheManager(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Call before creating the engine.
+     * Deletes the cache only if it belongs to a different model or looks damaged.
+     */
+    public void prepareForLoad(String modelPath) {
+        File cacheFile = getCacheFile(modelPath);
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String key = new File(modelPath).getName();
+
+        if (!cacheFile.exists()) {
+            Log.d(TAG, "XNNPack cache file not found (this is fine for first run)");
+            return;
+        }
+
+        String fingerprint = computeFingerprint(modelPath);
+        String savedFingerprint = prefs.getString(key + KEY_FINGERPRINT, null);
+        long savedCacheSize = prefs.getLong(key + KEY_CACHE_SIZE, -1);
+
+        if (fingerprint == null || !fingerprint.equals(savedFingerprint)) {
+            Log.d(TAG, "Model changed or cache has no metadata, dropping XNNPack cache");
+            invalidate(modelPath);
+        } else if (cacheFile.length() == 0 || cacheFile.length() != savedCacheSize) {
+            Log.d(TAG, "XNNPack cache size mismatch (" + cacheFile.length() + " vs " + savedCacheSize + "), dropping it");
+            invalidate(modelPath);
+        } else {
+            Log.d(TAG, "XNNPack cache validated, reusing it");
+        }
+    }
+
+    /**
+     * Call after the engine was created successfully, records what the cache was built from
+     */
+    public void onLoadSucceeded(String modelPath) {
+        File cacheFile = getCacheFile(modelPath);
+        if (!cacheFile.exists()) {
+            return;
+        }
+        String fingerprint = computeFingerprint(modelPath);
+        if (fingerprint == null) {
+            return;
+        }
+        String key = new File(modelPath).getName();
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(key + KEY_FINGERPRINT, fingerprint)
+                .putLong(key + KEY_CACHE_SIZE, cacheFile.length())
+                .apply();
+        Log.d(TAG, "Recorded XNNPack cache metadata for " + key);
+    }
+
+    /**
+     * Delete the cache and its metadata, e.g. after the engine failed to load with it
+     */
+    public void invalidate(String modelPath) {
+        try {
+            File cacheFile = getCacheFile(modelPath);
+            if (cacheFile.exists()) {
+                boolean deleted = cacheFile.delete();
+                Log.d(TAG, "XNNPack cache cleared: " + deleted);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error clearing XNNPack cache: " + e.getMessage(), e);
+            // Continue anyway - the cache will be recreated
+        }
+        String key = new File(modelPath).getName();
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .remove(key + KEY_FINGERPRINT)
+                .remove(key + KEY_CACHE_SIZE)
+                .apply();
+    }
+
+    private File getCacheFile(String modelPath) {
+        // MediaPipe writes the cache as <model file name>.xnnpack_cache in the app cache dir
+        return new File(context.getCacheDir(), new File(modelPath).getName() + CACHE_SUFFIX);
+    }
+
+    private String computeFingerprint(String modelPath) {
+        File modelFile = new File(modelPath);
+        if (!modelFile.exists()) {
+            return null;
+        }
+        long size = modelFile.length();
+        long mtime = modelFile.lastModified();
+
+        try (RandomAccessFile file = new RandomAccessFile(modelFile, "r")) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[SAMPLE_SIZE];
+            long[] offsets = {0, Math.max(0, size / 2 - SAMPLE_SIZE / 2), Math.max(0, size - SAMPLE_SIZE)};
+            for (long offset : offsets) {
+                file.seek(offset);
+                int read = file.read(buffer);
+                if (read > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return size + ":" + mtime + ":" + hex;
+        } catch (Exception e) {
+            Log.e(TAG, "Error fingerprinting model: " + e.getMessage(), e);
+            return null;
+        }
+    }
+}
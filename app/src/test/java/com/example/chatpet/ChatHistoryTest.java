@@ -0,0 +1,113 @@
+package com.example.chatpet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChatHistoryTest {
+
+    private static ChatService.ChatMessage msg(String text) {
+        return new ChatService.ChatMessage("user", text, 0);
+    }
+
+    private static List<String> texts(ChatHistory history) {
+        List<String> texts = new ArrayList<>();
+        for (ChatService.ChatMessage message : history) {
+            texts.add(message.message);
+        }
+        return texts;
+    }
+
+    private static ChatHistory historyOf(int capacity, String... texts) {
+        ChatHistory history = new ChatHistory(capacity);
+        for (String text : texts) {
+            history.add(msg(text));
+        }
+        return history;
+    }
+
+    @Test
+    public void add_keepsInsertionOrder() {
+        ChatHistory history = historyOf(3, "a", "b");
+        assertEquals(2, history.size());
+        assertEquals(List.of("a", "b"), texts(history));
+    }
+
+    @Test
+    public void add_fullBufferOverwritesOldest() {
+        ChatHistory history = historyOf(3, "a", "b", "c", "d", "e");
+        assertEquals(3, history.size());
+        assertEquals(3, history.capacity());
+        assertEquals(List.of("c", "d", "e"), texts(history));
+        assertEquals("c", history.get(0).message);
+        assertEquals("e", history.get(2).message);
+    }
+
+    @Test
+    public void removeOldest_afterWraparound() {
+        ChatHistory history = historyOf(3, "a", "b", "c", "d");
+        assertEquals("b", history.remove(0).message);
+        assertEquals(List.of("c", "d"), texts(history));
+
+        history.add(msg("e"));
+        history.add(msg("f"));
+        assertEquals(List.of("d", "e", "f"), texts(history));
+    }
+
+    @Test
+    public void removeMiddle_afterWraparound() {
+        // backing array is [d, e, c] with the head on c
+        ChatHistory history = historyOf(3, "a", "b", "c", "d", "e");
+        assertEquals("d", history.remove(1).message);
+        assertEquals(List.of("c", "e"), texts(history));
+
+        history.add(msg("f"));
+        assertEquals(List.of("c", "e", "f"), texts(history));
+    }
+
+    @Test
+    public void removeNewest() {
+        ChatHistory history = historyOf(3, "a", "b", "c", "d");
+        assertEquals("d", history.remove(2).message);
+        assertEquals(List.of("b", "c"), texts(history));
+    }
+
+    @Test
+    public void subList_spansWraparound() {
+        ChatHistory history = historyOf(4, "a", "b", "c", "d", "e", "f");
+        List<String> folded = new ArrayList<>();
+        for (ChatService.ChatMessage message : history.subList(0, 3)) {
+            folded.add(message.message);
+        }
+        assertEquals(List.of("c", "d", "e"), folded);
+    }
+
+    @Test
+    public void clear_resetsBuffer() {
+        ChatHistory history = historyOf(2, "a", "b", "c");
+        history.clear();
+        assertTrue(history.isEmpty());
+        history.add(msg("x"));
+        assertEquals(List.of("x"), texts(history));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_outOfRangeThrows() {
+        historyOf(3, "a").get(1);
+    }
+
+    @Test
+    public void removeEverything_thenAddStartsFresh() {
+        ChatHistory history = historyOf(2, "a", "b", "c");
+        history.remove(0);
+        history.remove(0);
+        assertTrue(history.isEmpty());
+        history.add(msg("x"));
+        assertEquals(1, history.size());
+        assertEquals("x", history.get(0).message);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.chatpet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ChatRequestQueueTest {
+
+    @Test
+    public void poll_emptyQueueReturnsNull() {
+        assertNull(new ChatRequestQueue().poll());
+    }
+
+    @Test
+    public void offer_samePersonaIsCoalesced() {
+        ChatRequestQueue queue = new ChatRequestQueue();
+        assertEquals(1, queue.offer("hi", "unicorn"));
+        assertEquals(1, queue.offer("are you there?", "unicorn"));
+
+        ChatRequestQueue.Request request = queue.poll();
+        assertEquals("hi\nare you there?", request.userMsg);
+        assertEquals("unicorn", request.prompt);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void offer_differentPersonaKeepsOrder() {
+        ChatRequestQueue queue = new ChatRequestQueue();
+        queue.offer("hi", "unicorn");
+        assertEquals(2, queue.offer("hello", "dragon"));
+        assertEquals(3, queue.offer("again", "unicorn"));
+
+        assertEquals("unicorn", queue.poll().prompt);
+        assertEquals("dragon", queue.poll().prompt);
+        assertEquals("again", queue.poll().userMsg);
+    }
+
+    @Test
+    public void offer_fullQueueMergesIntoNewest() {
+        ChatRequestQueue queue = new ChatRequestQueue(2);
+        queue.offer("a", "p1");
+        queue.offer("b", "p2");
+        assertEquals(2, queue.offer("c", "p3"));
+
+        assertEquals("a", queue.poll().userMsg);
+        ChatRequestQueue.Request merged = queue.poll();
+        assertEquals("b\nc", merged.userMsg);
+        assertEquals("p3", merged.prompt);
+    }
+
+    @Test
+    public void offer_mergeKeepsOriginalEnqueueTime() throws Exception {
+        ChatRequestQueue queue = new ChatRequestQueue();
+        queue.offer("a", "p");
+        Thread.sleep(5);
+        queue.offer("b", "p");
+        queue.poll();
+        // waited since "a" was queued, not since "b" was merged in
+        assertTrue(queue.getLastWaitMs() >= 5);
+    }
+
+    @Test
+    public void requeueFirst_mergesWithSamePersonaHead() {
+        ChatRequestQueue queue = new ChatRequestQueue();
+        queue.offer("first", "p");
+        ChatRequestQueue.Request cancelled = queue.poll();
+        queue.offer("second", "p");
+
+        queue.requeueFirst(cancelled);
+        assertEquals(1, queue.getDepth());
+        ChatRequestQueue.Request request = queue.poll();
+        assertEquals("first\nsecond", request.userMsg);
+        assertEquals(cancelled.enqueuedAt, request.enqueuedAt);
+    }
+
+    @Test
+    public void requeueFirst_otherPersonaGoesInFront() {
+        ChatRequestQueue queue = new ChatRequestQueue();
+        queue.offer("first", "p1");
+        ChatRequestQueue.Request cancelled = queue.poll();
+        queue.offer("second", "p2");
+
+        queue.requeueFirst(cancelled);
+        assertEquals(2, queue.getDepth());
+        assertEquals("first", queue.poll().userMsg);
+        assertEquals("second", queue.poll().userMsg);
+    }
+
+    @Test
+    public void clear_emptiesQueue() {
+        ChatRequestQueue queue = new ChatRequestQueue();
+        queue.offer("a", "p1");
+        queue.offer("b", "p2");
+        queue.clear();
+        assertEquals(0, queue.getDepth());
+        assertNull(queue.poll());
+    }
+}
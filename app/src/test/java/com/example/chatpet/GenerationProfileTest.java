@@ -0,0 +1,114 @@
+package com.example.chatpet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class GenerationProfileTest {
+
+    private static final GenerationProfile CHAT = GenerationProfile.CHAT;
+    private static final GenerationProfile JOURNAL = GenerationProfile.JOURNAL;
+
+    @Test
+    public void findStop_noStopSequence() {
+        assertEquals(-1, CHAT.findStop("Hello there!"));
+        assertEquals("Hello there!", CHAT.clean("Hello there!"));
+    }
+
+    @Test
+    public void findStop_cutsHallucinatedNextTurn() {
+        String text = "Hello!\nUser: how are you";
+        assertEquals(6, CHAT.findStop(text));
+        assertEquals("Hello!", CHAT.clean(text));
+    }
+
+    @Test
+    public void findStop_earliestStopWins() {
+        String text = "Hi Assistant: no User: no";
+        assertEquals(3, CHAT.findStop(text));
+        assertEquals("Hi", CHAT.clean(text));
+    }
+
+    @Test
+    public void findStop_ignoresStopAtIndexZero() {
+        // a stop sequence before any content must not cut the reply down to nothing
+        assertEquals(-1, JOURNAL.findStop("User: today was fun"));
+        assertEquals("User: today was fun", JOURNAL.clean("User: today was fun"));
+    }
+
+    @Test
+    public void clean_stripsLeadingRoleLabel() {
+        String text = "Assistant: Hi, I missed you!";
+        assertEquals(-1, CHAT.findStop(text));
+        assertEquals("Hi, I missed you!", CHAT.clean(text));
+    }
+
+    @Test
+    public void clean_stripsLabelThenStopsAfterContent() {
+        assertEquals("Hi!", CHAT.clean("  Assistant:  Hi!\nUser: hey"));
+    }
+
+    @Test
+    public void clean_stripsPreambleLine() {
+        String text = "Okay, here is your journal entry:\nToday I played in the garden.";
+        assertEquals("Today I played in the garden.", JOURNAL.clean(text));
+    }
+
+    @Test
+    public void cleanPartial_emptyWhileOnlyLeadInDecoded() {
+        assertEquals("", JOURNAL.cleanPartial("Okay, here is your"));
+        assertEquals("", JOURNAL.cleanPartial("Sure, here it is."));
+        assertEquals("", CHAT.cleanPartial("Assis"));
+        assertEquals("", CHAT.cleanPartial("Assistant:"));
+        assertEquals("", CHAT.cleanPartial("   "));
+    }
+
+    @Test
+    public void clean_finishedReplyKeepsIncompleteLeadIn() {
+        assertEquals("Assis", CHAT.clean("Assis"));
+        assertEquals("Okay, here is your", JOURNAL.clean("Okay, here is your"));
+        assertEquals("", CHAT.clean("Assistant:"));
+    }
+
+    @Test
+    public void clean_preambleWithoutNewlineEndsAtColonOrSentence() {
+        assertEquals("Today I played...", JOURNAL.clean("Okay, here is my journal entry: Today I played..."));
+        assertEquals("Dear diary, what a day.", JOURNAL.clean("Sure, here it is. Dear diary, what a day."));
+        assertEquals("Today I played.", JOURNAL.clean("Okay, here's today's entry\nToday I played."));
+    }
+
+    @Test
+    public void findStop_firesAfterPreambleOnSameLine() {
+        String text = "Okay, here is my entry: Today was fun. User: write more";
+        assertEquals(text.indexOf("User:"), JOURNAL.findStop(text));
+        assertEquals("Today was fun.", JOURNAL.clean(text));
+    }
+
+    @Test
+    public void findStop_userWordIsNotANewTurn() {
+        assertEquals(-1, CHAT.findStop("Hello!\nUsers like me."));
+        assertEquals("Hello!\nUsers like me.", CHAT.clean("Hello!\nUsers like me."));
+    }
+
+    @Test
+    public void clean_keepsContentThatOnlyStartsLikeALabel() {
+        assertEquals("A dog barked.", CHAT.clean("A dog barked."));
+    }
+
+    @Test
+    public void contentStart_skipsLabelAndWhitespace() {
+        assertEquals(11, CHAT.contentStart("Assistant: Hello"));
+        assertEquals(0, CHAT.contentStart("Hello"));
+    }
+
+    @Test
+    public void withLimits_keepsLeadInRulesAndChangesKey() {
+        GenerationProfile tuned = JOURNAL.withLimits(50, 8);
+        assertEquals(50, tuned.getMaxOutputTokens());
+        assertEquals(8, tuned.getTopK());
+        assertEquals("Text", tuned.clean("Sure, here you go\nText"));
+        assertNotEquals(JOURNAL.getKey(), tuned.getKey());
+        assertEquals(tuned.getKey(), JOURNAL.withLimits(50, 8).getKey());
+    }
+}
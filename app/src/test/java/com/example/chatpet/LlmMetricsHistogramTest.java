@@ -0,0 +1,76 @@
+package com.example.chatpet;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LlmMetricsHistogramTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static LlmMetrics.Histogram histogram() {
+        return new LlmMetrics.Histogram(new long[]{10, 20, 50});
+    }
+
+    @Test
+    public void empty_reportsZeros() {
+        LlmMetrics.Histogram histogram = histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean(), DELTA);
+        assertEquals(0, histogram.getMin(), DELTA);
+        assertEquals(0, histogram.getMax(), DELTA);
+        assertEquals(0, histogram.getPercentile(50), DELTA);
+    }
+
+    @Test
+    public void record_valueOnBoundGoesInThatBucket() {
+        LlmMetrics.Histogram histogram = histogram();
+        histogram.record(10);
+        // the bucket's bound is reported, capped at the largest value seen
+        assertEquals(10, histogram.getPercentile(100), DELTA);
+
+        histogram.record(10.5);
+        assertEquals(10, histogram.getPercentile(50), DELTA);
+        assertEquals(10.5, histogram.getPercentile(100), DELTA);
+    }
+
+    @Test
+    public void percentile_isCappedAtMax() {
+        LlmMetrics.Histogram histogram = histogram();
+        histogram.record(5);
+        assertEquals(5, histogram.getPercentile(50), DELTA);
+    }
+
+    @Test
+    public void percentile_overflowBucketReportsMax() {
+        LlmMetrics.Histogram histogram = histogram();
+        histogram.record(5);
+        histogram.record(15);
+        histogram.record(100);
+        assertEquals(20, histogram.getPercentile(50), DELTA);
+        assertEquals(100, histogram.getPercentile(99), DELTA);
+    }
+
+    @Test
+    public void stats_trackCountMeanMinMax() {
+        LlmMetrics.Histogram histogram = histogram();
+        histogram.record(4);
+        histogram.record(8);
+        histogram.record(60);
+        assertEquals(3, histogram.getCount());
+        assertEquals(24, histogram.getMean(), DELTA);
+        assertEquals(4, histogram.getMin(), DELTA);
+        assertEquals(60, histogram.getMax(), DELTA);
+    }
+
+    @Test
+    public void copy_isIndependent() {
+        LlmMetrics.Histogram histogram = histogram();
+        histogram.record(5);
+        LlmMetrics.Histogram copy = new LlmMetrics.Histogram(histogram);
+        histogram.record(40);
+        assertEquals(1, copy.getCount());
+        assertEquals(5, copy.getMax(), DELTA);
+        assertEquals(2, histogram.getCount());
+    }
+}
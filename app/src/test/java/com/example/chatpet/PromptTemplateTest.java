@@ -0,0 +1,73 @@
+package com.example.chatpet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PromptTemplateTest {
+
+    private static Map<String, String> values(String... pairs) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            values.put(pairs[i], pairs[i + 1]);
+        }
+        return values;
+    }
+
+    @Test
+    public void render_fillsSlots() {
+        PromptTemplate template = PromptTemplate.compile("Hi {name}, you are level {level}!");
+        assertArrayEquals(new String[]{"name", "level"}, template.getSlots());
+        assertEquals("Hi Daisy, you are level 3!", template.render(values("name", "Daisy", "level", "3")));
+    }
+
+    @Test
+    public void render_templateWithoutSlots() {
+        PromptTemplate template = PromptTemplate.compile("No slots here");
+        assertEquals(0, template.getSlots().length);
+        assertEquals("No slots here", template.render(Collections.emptyMap()));
+        assertEquals("No slots here", template.getFixedPrefix());
+    }
+
+    @Test
+    public void render_adjacentSlotsAndSlotAtStart() {
+        PromptTemplate template = PromptTemplate.compile("{a}{b} end");
+        assertEquals("", template.getFixedPrefix());
+        assertEquals("12 end", template.render(values("a", "1", "b", "2")));
+    }
+
+    @Test
+    public void render_repeatedSlot() {
+        PromptTemplate template = PromptTemplate.compile("{x} and {x}");
+        assertEquals("y and y", template.render(values("x", "y")));
+    }
+
+    @Test
+    public void render_valuesAreNotReparsed() {
+        PromptTemplate template = PromptTemplate.compile("Say {msg}");
+        assertEquals("Say {name}", template.render(values("msg", "{name}")));
+    }
+
+    @Test
+    public void compile_unclosedBraceIsLiteral() {
+        PromptTemplate template = PromptTemplate.compile("Hello {name");
+        assertEquals(0, template.getSlots().length);
+        assertEquals("Hello {name", template.render(Collections.emptyMap()));
+    }
+
+    @Test
+    public void getFixedPrefix_isTextBeforeFirstSlot() {
+        PromptTemplate template = PromptTemplate.compile("You are a pet. {persona}\nUser: {msg}");
+        assertEquals("You are a pet. ", template.getFixedPrefix());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void render_missingValueThrows() {
+        PromptTemplate.compile("Hi {name}").render(Collections.emptyMap());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.chatpet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ResponseCacheTest {
+
+    private static ChatService.ChatMessage msg(String role, String text) {
+        return new ChatService.ChatMessage(role, text, 0);
+    }
+
+    @Test
+    public void normalize_lowercasesAndDropsTrailingPunctuation() {
+        assertEquals("hi", ResponseCache.normalize("  Hi!! "));
+        assertEquals("good night", ResponseCache.normalize("Good   Night..."));
+        assertEquals("what's up", ResponseCache.normalize("What's\tup ?"));
+    }
+
+    @Test
+    public void normalize_keepsInnerPunctuation() {
+        assertEquals("hi, pet", ResponseCache.normalize("Hi, pet!"));
+    }
+
+    @Test
+    public void normalize_emptyForNullOrPunctuationOnly() {
+        assertEquals("", ResponseCache.normalize(null));
+        assertEquals("", ResponseCache.normalize("   "));
+        assertEquals("", ResponseCache.normalize("?!..."));
+    }
+
+    @Test
+    public void buildKey_nullWhenMessageNormalizesToNothing() {
+        assertNull(ResponseCache.buildKey("persona", "!!!", Collections.emptyList()));
+    }
+
+    @Test
+    public void buildKey_sameForEquivalentMessages() {
+        List<ChatService.ChatMessage> history = Collections.emptyList();
+        String key = ResponseCache.buildKey("persona", "Hi!", history);
+        assertNotNull(key);
+        assertEquals(key, ResponseCache.buildKey("persona", "  hi ", history));
+    }
+
+    @Test
+    public void buildKey_differsPerPersona() {
+        List<ChatService.ChatMessage> history = Collections.emptyList();
+        assertNotEquals(ResponseCache.buildKey("unicorn", "hi", history),
+                ResponseCache.buildKey("dragon", "hi", history));
+    }
+
+    @Test
+    public void buildKey_onlyNewestTurnsCount() {
+        List<ChatService.ChatMessage> history = Arrays.asList(
+                msg("user", "first"), msg("assistant", "hello"), msg("user", "again"));
+        List<ChatService.ChatMessage> olderDiffers = Arrays.asList(
+                msg("user", "something else"), msg("assistant", "hello"), msg("user", "again"));
+        List<ChatService.ChatMessage> newestDiffers = Arrays.asList(
+                msg("user", "first"), msg("assistant", "hello"), msg("user", "bye"));
+
+        String key = ResponseCache.buildKey("persona", "hi", history);
+        assertEquals(key, ResponseCache.buildKey("persona", "hi", olderDiffers));
+        assertNotEquals(key, ResponseCache.buildKey("persona", "hi", newestDiffers));
+    }
+
+    @Test
+    public void buildKey_historyIsNormalizedToo() {
+        List<ChatService.ChatMessage> history = Collections.singletonList(msg("assistant", "Hello!"));
+        List<ChatService.ChatMessage> same = Collections.singletonList(msg("assistant", "hello"));
+        List<ChatService.ChatMessage> otherRole = Collections.singletonList(msg("user", "hello"));
+
+        String key = ResponseCache.buildKey("persona", "hi", history);
+        assertEquals(key, ResponseCache.buildKey("persona", "hi", same));
+        assertNotEquals(key, ResponseCache.buildKey("persona", "hi", otherRole));
+    }
+}